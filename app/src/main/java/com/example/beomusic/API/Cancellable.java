@@ -0,0 +1,11 @@
+package com.example.beomusic.API;
+
+/**
+ * Handle for an asynchronous request that can be abandoned.
+ * A cancelled request never calls back.
+ */
+public interface Cancellable {
+    void cancel();
+
+    boolean isCancelled();
+}
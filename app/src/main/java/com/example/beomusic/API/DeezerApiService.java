@@ -4,16 +4,11 @@ import android.util.Log;
 
 import com.example.beomusic.models.Song;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 public class DeezerApiService {
@@ -25,72 +20,97 @@ public class DeezerApiService {
         void onError(Exception e);
     }
 
-    public void searchSongs(String query, ApiCallback<List<Song>> callback) {
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "Bắt đầu tìm kiếm: " + query);
-                URL url = new URL(DEEZER_SEARCH_URL + query.replace(" ", "%20"));
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                reader.close();
-
-                List<Song> songs = parseDeezerResponse(response.toString());
-                callback.onSuccess(songs);
-            } catch (Exception e) {
-                Log.e(TAG, "Lỗi khi gọi API Deezer: " + e.getMessage());
-                callback.onError(e);
-            }
-        }).start();
+    /**
+     * One page of search results starting at {@code index}
+     */
+    public static class SearchPage {
+        public final List<Song> songs;
+        public final int index;
+        public final int total; // -1 if Deezer didn't report it
+
+        public SearchPage(List<Song> songs, int index, int total) {
+            this.songs = songs;
+            this.index = index;
+            this.total = total;
+        }
+
+        public boolean hasMore() {
+            return total < 0 ? !songs.isEmpty() : index + songs.size() < total;
+        }
     }
 
-    private List<Song> parseDeezerResponse(String jsonResponse) throws JSONException {
-        List<Song> songs = new ArrayList<>();
+    private final HttpClient httpClient;
+    private final DeezerResponseParser parser = new DeezerResponseParser();
 
-        JSONObject jsonObject = new JSONObject(jsonResponse);
-        JSONArray dataArray = jsonObject.getJSONArray("data");
+    public DeezerApiService() {
+        this(HttpClient.getInstance());
+    }
+
+    public DeezerApiService(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
 
-        for (int i = 0; i < dataArray.length(); i++) {
-            JSONObject trackJson = dataArray.getJSONObject(i);
+    public Cancellable searchSongs(String query, ApiCallback<List<Song>> callback) {
+        Log.d(TAG, "Bắt đầu tìm kiếm: " + query);
+        String url = DEEZER_SEARCH_URL + encodeQuery(query);
 
-            String songId = trackJson.getString("id");
-            String title = trackJson.getString("title");
-            int duration = trackJson.getInt("duration");
-            String previewUrl = trackJson.getString("preview");
+        return httpClient.get(url, this::parseDeezerResponse, new ApiCallback<List<Song>>() {
+            @Override
+            public void onSuccess(List<Song> songs) {
+                Log.d(TAG, "HTTP metrics: " + httpClient.getMetrics());
+                callback.onSuccess(songs);
+            }
 
-            JSONObject artist = trackJson.getJSONObject("artist");
-            String artistName = artist.getString("name");
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Lỗi khi gọi API Deezer: " + e.getMessage());
+                callback.onError(e);
+            }
+        });
+    }
 
-            JSONObject album = trackJson.getJSONObject("album");
-            String thumbnailUrl = album.getString("cover_medium");
+    /**
+     * Fetch one page of search results using Deezer's index/limit parameters
+     * @param query Search query
+     * @param index Offset of the first result
+     * @param limit Page size
+     * @param callback Callback for result
+     * @return Handle to cancel the request
+     */
+    public Cancellable searchSongs(String query, int index, int limit, ApiCallback<SearchPage> callback) {
+        Log.d(TAG, "Tải trang: " + query + ", index=" + index + ", limit=" + limit);
+        String url = DEEZER_SEARCH_URL + encodeQuery(query) + "&index=" + index + "&limit=" + limit;
+
+        return httpClient.get(url, body -> {
+            List<Song> songs = new ArrayList<>();
+            int total = parser.parse(body, songs::add);
+            return new SearchPage(songs, index, total);
+        }, new ApiCallback<SearchPage>() {
+            @Override
+            public void onSuccess(SearchPage page) {
+                callback.onSuccess(page);
+            }
 
-            // Xác định genre nếu có
-            String genre = "Unknown";
-            if (trackJson.has("genre_id")) {
-                genre = trackJson.getString("genre_id");
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Lỗi khi tải trang " + index + ": " + e.getMessage());
+                callback.onError(e);
             }
+        });
+    }
 
-            Song song = new Song();
-            song.setSongId(songId);
-            song.setTitle(title);
-            song.setArtist(artistName);
-            song.setDuration(duration);
-            song.setSourceType("Deezer");
-            song.setFilePath(previewUrl);  // URL preview để phát nhạc
-            song.setThumbnailUrl(thumbnailUrl);
-            song.setGenre(genre);
-            song.setAddedDate(new Date());  // Thời gian hiện tại
-            song.setPlayCount(0);  // Bắt đầu với 0 lượt phát
-
-            songs.add(song);
+    private String encodeQuery(String query) {
+        try {
+            // URLEncoder is form encoding: spaces become '+', sent as %20 like before
+            return URLEncoder.encode(query, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is always supported", e);
         }
+    }
 
+    private List<Song> parseDeezerResponse(InputStream body) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        parser.parse(body, songs::add);
         return songs;
     }
 }
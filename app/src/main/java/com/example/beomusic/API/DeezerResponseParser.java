@@ -0,0 +1,131 @@
+package com.example.beomusic.API;
+
+import com.example.beomusic.models.Song;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.function.Consumer;
+
+/**
+ * Streaming parser for Deezer search responses.
+ *
+ * Reads tracks straight from the response stream with a pull parser and hands each
+ * {@link Song} to the sink as soon as its object is closed, so neither the body string
+ * nor a JSON tree of the whole page is ever held in memory.
+ */
+public class DeezerResponseParser {
+
+    /**
+     * Parse a search response
+     * @param in Response body (UTF-8)
+     * @param sink Receives each song in response order
+     * @return The "total" field of the response, or -1 if absent
+     */
+    public int parse(InputStream in, Consumer<Song> sink) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        int total = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "data":
+                    readTracks(reader, sink);
+                    break;
+                case "total":
+                    total = reader.nextInt();
+                    break;
+                case "error":
+                    throw new IOException("Deezer trả về lỗi: " + readErrorMessage(reader));
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return total;
+    }
+
+    private void readTracks(JsonReader reader, Consumer<Song> sink) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            sink.accept(readTrack(reader));
+        }
+        reader.endArray();
+    }
+
+    private Song readTrack(JsonReader reader) throws IOException {
+        Song song = new Song();
+        // Xác định genre nếu có
+        song.setGenre("Unknown");
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    song.setSongId(reader.nextString());
+                    break;
+                case "title":
+                    song.setTitle(reader.nextString());
+                    break;
+                case "duration":
+                    song.setDuration(reader.nextInt());
+                    break;
+                case "preview":
+                    song.setFilePath(reader.nextString());  // URL preview để phát nhạc
+                    break;
+                case "genre_id":
+                    song.setGenre(reader.nextString());
+                    break;
+                case "artist":
+                    song.setArtist(readField(reader, "name"));
+                    break;
+                case "album":
+                    song.setThumbnailUrl(readField(reader, "cover_medium"));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        song.setSourceType("Deezer");
+        song.setAddedDate(new Date());  // Thời gian hiện tại
+        song.setPlayCount(0);  // Bắt đầu với 0 lượt phát
+        return song;
+    }
+
+    // Read a single string field from a nested object, skipping everything else
+    private String readField(JsonReader reader, String field) throws IOException {
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (field.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                value = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    private String readErrorMessage(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return reader.nextString();
+        }
+        String message = readField(reader, "message");
+        return message != null ? message : "unknown";
+    }
+}
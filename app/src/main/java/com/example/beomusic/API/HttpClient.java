@@ -0,0 +1,334 @@
+package com.example.beomusic.API;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared HTTP client for the API layer.
+ *
+ * All requests run on one bounded executor instead of a new Thread per call, and
+ * connections are kept alive so that back-to-back requests to the same host
+ * (e.g. the three home tabs) reuse the TCP/TLS session from the platform pool.
+ * A connection only goes back to the pool when its body has been fully read and
+ * closed, so every response is drained here before the callback runs.
+ */
+public class HttpClient {
+    private static final String TAG = "HttpClient";
+
+    private static volatile HttpClient instance;
+
+    private final Config config;
+    private final ExecutorService executor;
+    private final Metrics metrics = new Metrics();
+
+    /**
+     * Client configuration. Values must be set before the first call to {@link #getInstance()}.
+     */
+    public static class Config {
+        public int connectTimeoutMs = 10_000;
+        public int readTimeoutMs = 15_000;
+        public int maxConcurrentRequests = 4;
+        public int maxQueuedRequests = 64;
+        public int maxIdleConnections = 5;
+        public long keepAliveMs = 5 * 60 * 1000L;
+    }
+
+    /**
+     * Parses a response body. The stream is already gzip-decoded and is closed by the client.
+     */
+    public interface BodyParser<T> {
+        T parse(InputStream body) throws Exception;
+    }
+
+    /**
+     * Parses a response whose status and headers matter, e.g. a range request. Non-2xx
+     * statuses are not turned into errors; the parser decides.
+     */
+    public interface ResponseParser<T> {
+        /**
+         * @param status HTTP status code
+         * @param connection The connection, for reading response headers
+         * @param body Decoded body, or null when the status is not 2xx
+         */
+        T parse(int status, HttpURLConnection connection, InputStream body) throws Exception;
+    }
+
+    /**
+     * A request submitted through {@link #get}. Cancelling it drops the queued task or
+     * disconnects the connection mid-transfer; the callback is not invoked afterwards.
+     */
+    public static class Call implements Cancellable {
+        private volatile boolean cancelled;
+        private volatile HttpURLConnection connection;
+        private volatile Future<?> future;
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Future<?> task = future;
+            if (task != null) {
+                task.cancel(false);
+            }
+            HttpURLConnection active = connection;
+            if (active != null) {
+                active.disconnect();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Request counters, readable from any thread. HttpURLConnection doesn't report whether
+     * a socket came from its pool, so reuse shows up only as lower latency.
+     */
+    public static class Metrics {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong cancellations = new AtomicLong();
+        private final AtomicLong totalLatencyMs = new AtomicLong();
+
+        public long getRequests() { return requests.get(); }
+        public long getSuccesses() { return successes.get(); }
+        public long getFailures() { return failures.get(); }
+        public long getCancellations() { return cancellations.get(); }
+
+        // Over successful requests only, the only ones whose latency is recorded
+        public long getAverageLatencyMs() {
+            long count = successes.get();
+            return count == 0 ? 0 : totalLatencyMs.get() / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "requests=%d, succeeded=%d, failures=%d, cancelled=%d, avgLatency=%dms",
+                    getRequests(), getSuccesses(), getFailures(), getCancellations(), getAverageLatencyMs());
+        }
+    }
+
+    private static Config pendingConfig = new Config();
+
+    /**
+     * Override the default configuration. Has no effect once the client has been created.
+     * @param config New configuration
+     */
+    public static synchronized void configure(Config config) {
+        if (instance != null) {
+            Log.w(TAG, "configure: client already created, ignoring new config");
+            return;
+        }
+        pendingConfig = config;
+    }
+
+    /**
+     * Configure the platform HttpURLConnection keep-alive pool. The pool reads these
+     * properties once, when the first connection of the process is opened (by any library,
+     * e.g. Glide or Firebase), so this must run at application start, after any
+     * {@link #configure(Config)} call.
+     */
+    public static synchronized void installConnectionPool() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(pendingConfig.maxIdleConnections));
+        System.setProperty("http.keepAliveDuration", String.valueOf(pendingConfig.keepAliveMs));
+    }
+
+    public static HttpClient getInstance() {
+        if (instance == null) {
+            synchronized (HttpClient.class) {
+                if (instance == null) {
+                    instance = new HttpClient(pendingConfig);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private HttpClient(Config config) {
+        this.config = config;
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                config.maxConcurrentRequests,
+                config.maxConcurrentRequests,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(config.maxQueuedRequests),
+                new HttpThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Perform a GET request on the shared executor
+     * @param url Request URL
+     * @param parser Parser for the response body
+     * @param callback Callback for result, invoked on the worker thread
+     * @return Handle to cancel the request
+     */
+    public <T> Call get(String url, BodyParser<T> parser, DeezerApiService.ApiCallback<T> callback) {
+        Call call = new Call();
+        try {
+            call.future = executor.submit(() -> {
+                try {
+                    T result = execute(url, parser, call);
+                    if (!call.isCancelled()) {
+                        callback.onSuccess(result);
+                    }
+                } catch (Exception e) {
+                    if (!call.isCancelled()) {
+                        callback.onError(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "get: request queue is full, dropping " + url);
+            metrics.failures.incrementAndGet();
+            callback.onError(e);
+        }
+        return call;
+    }
+
+    /**
+     * Perform a GET request on the calling thread
+     * @param url Request URL
+     * @param parser Parser for the response body
+     * @return Parsed body
+     */
+    public <T> T execute(String url, BodyParser<T> parser) throws Exception {
+        return execute(url, parser, new Call());
+    }
+
+    /**
+     * Perform a GET request with extra headers on the calling thread
+     * @param url Request URL
+     * @param headers Request headers, overriding the client defaults
+     * @param parser Parser for the status, headers and body
+     * @return Parsed response
+     */
+    public <T> T execute(String url, Map<String, String> headers, ResponseParser<T> parser) throws Exception {
+        return execute(url, headers, parser, new Call());
+    }
+
+    private <T> T execute(String url, BodyParser<T> parser, Call call) throws Exception {
+        return execute(url, Collections.emptyMap(), (status, connection, body) -> {
+            if (body == null) {
+                throw new IOException("HTTP " + status + " khi gọi " + connection.getURL().getHost());
+            }
+            return parser.parse(body);
+        }, call);
+    }
+
+    private <T> T execute(String url, Map<String, String> headers, ResponseParser<T> parser, Call call)
+            throws Exception {
+        URL target = new URL(url);
+        long start = SystemClock.elapsedRealtime();
+
+        if (call.isCancelled()) {
+            metrics.cancellations.incrementAndGet();
+            throw new IOException("Request cancelled");
+        }
+
+        metrics.requests.incrementAndGet();
+
+        HttpURLConnection connection = (HttpURLConnection) target.openConnection();
+        call.connection = connection;
+        try {
+            if (call.isCancelled()) {
+                throw new IOException("Request cancelled");
+            }
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(config.connectTimeoutMs);
+            connection.setReadTimeout(config.readTimeoutMs);
+            connection.setRequestProperty("Connection", "keep-alive");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            int status = connection.getResponseCode();
+            T result;
+            if (status >= 200 && status < 300) {
+                try (InputStream body = openBody(connection)) {
+                    result = parser.parse(status, connection, body);
+                    drain(body);
+                }
+            } else {
+                result = parser.parse(status, connection, null);
+                InputStream error = connection.getErrorStream();
+                if (error != null) {
+                    try (InputStream body = error) {
+                        drain(body);
+                    }
+                }
+            }
+
+            metrics.successes.incrementAndGet();
+            metrics.totalLatencyMs.addAndGet(SystemClock.elapsedRealtime() - start);
+            return result;
+        } catch (Exception e) {
+            // A failed exchange leaves the socket in an unknown state, don't reuse it
+            if (call.isCancelled()) {
+                metrics.cancellations.incrementAndGet();
+            } else {
+                metrics.failures.incrementAndGet();
+            }
+            connection.disconnect();
+            throw e;
+        } finally {
+            call.connection = null;
+        }
+    }
+
+    private InputStream openBody(HttpURLConnection connection) throws IOException {
+        InputStream raw = connection.getInputStream();
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            return new GZIPInputStream(raw);
+        }
+        return raw;
+    }
+
+    // Parsers may stop before EOF; the rest must be consumed for the socket to be reusable
+    private void drain(InputStream body) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (body.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    private static class HttpThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "beomusic-http-" + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.beomusic;
+
+import android.app.Application;
+import android.content.Context;
+
+import com.example.beomusic.API.HttpClient;
+
+public class BeoMusicApplication extends Application {
+
+    @Override
+    protected void attachBaseContext(Context base) {
+        // Runs before content providers (FirebaseInitProvider) and before anything, Glide
+        // included, can open the first HttpURLConnection of the process
+        HttpClient.installConnectionPool();
+        super.attachBaseContext(base);
+    }
+}
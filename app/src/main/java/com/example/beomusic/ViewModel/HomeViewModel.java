@@ -1,18 +1,27 @@
 package com.example.beomusic.ViewModel;
 
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
 import com.example.beomusic.API.DeezerApiService;
 import com.example.beomusic.models.Song;
 import com.example.beomusic.repositories.MusicRepository;
+import com.example.beomusic.repositories.SearchCache;
+import com.example.beomusic.repositories.SearchPagingSource;
+import com.example.beomusic.utils.SearchQueryPipeline;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
-public class HomeViewModel extends ViewModel {
+public class HomeViewModel extends AndroidViewModel {
     private static final String TAG = "HomeViewModel";
 
     private MusicRepository repository;
@@ -20,8 +29,30 @@ public class HomeViewModel extends ViewModel {
     private MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
     private MutableLiveData<String> error = new MutableLiveData<>();
 
-    public HomeViewModel() {
-        repository = new MusicRepository();
+    // Only the latest search may publish; older ones are cancelled and their results dropped
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private MusicRepository.Search currentRequest;
+    private String currentQuery;
+    private int generation = 0;
+    private SearchPagingSource pagingSource;
+
+    // Type-ahead: keystrokes are debounced into queries, and a query that extends the
+    // last fetched one is answered by filtering that result locally first
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+    private static final long SEARCH_MAX_WAIT_MS = 1000;
+    private static final int SEARCH_MIN_LENGTH = 2;
+    private final SearchQueryPipeline queryPipeline;
+    private String baseQuery;
+    private List<Song> baseSongs = new ArrayList<>();
+    // True when the base result holds every match, so narrower queries need no request
+    private boolean baseComplete = false;
+    private int localOnlySearches = 0;
+
+    public HomeViewModel(@NonNull Application application) {
+        super(application);
+        repository = new MusicRepository(application);
+        queryPipeline = new SearchQueryPipeline(SEARCH_DEBOUNCE_MS, SEARCH_MAX_WAIT_MS,
+                SEARCH_MIN_LENGTH, this::onTypedQuery);
     }
 
     public LiveData<List<Song>> getSongs() {
@@ -36,24 +67,177 @@ public class HomeViewModel extends ViewModel {
         return error;
     }
 
+    // Must be called on the main thread
     public void searchSongs(String query) {
+        String key = SearchCache.normalize(query);
+        // Still running for this query, including a background refresh after a stale cache hit
+        if (key.equals(currentQuery) && currentRequest != null && currentRequest.isInFlight()) {
+            Log.d(TAG, "Bỏ qua tìm kiếm trùng: " + query);
+            return;
+        }
+
+        if (currentRequest != null) {
+            currentRequest.cancel();
+        }
+        releasePaging();
+        final int requestGeneration = ++generation;
+        currentQuery = key;
+
         isLoading.setValue(true);
         error.setValue(null);
 
-        repository.searchSongs(query, new DeezerApiService.ApiCallback<List<Song>>() {
+        currentRequest = repository.searchSongs(query, new DeezerApiService.ApiCallback<List<Song>>() {
             @Override
             public void onSuccess(List<Song> result) {
-                isLoading.postValue(false);
-                songs.postValue(result);
-                Log.d(TAG, "Tìm thấy " + result.size() + " bài hát");
+                mainHandler.post(() -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    isLoading.setValue(false);
+                    showFirstPage(query, result);
+                    Log.d(TAG, "Tìm thấy " + result.size() + " bài hát");
+                });
             }
 
             @Override
             public void onError(Exception e) {
-                isLoading.postValue(false);
-                error.postValue("Lỗi khi tìm kiếm: " + e.getMessage());
-                Log.e(TAG, "Lỗi khi tìm kiếm: " + e.getMessage());
+                mainHandler.post(() -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    isLoading.setValue(false);
+                    error.setValue("Lỗi khi tìm kiếm: " + e.getMessage());
+                    Log.e(TAG, "Lỗi khi tìm kiếm: " + e.getMessage());
+                });
             }
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Show a fixed category (home tabs). It replaces the results, so the type-ahead forgets
+     * its last query and typing that same text again searches again.
+     * @param query Category query
+     */
+    public void searchCategory(String query) {
+        queryPipeline.reset();
+        searchSongs(query);
+    }
+
+    /**
+     * Feed the search box text on every keystroke. Results already on hand are filtered
+     * immediately; the network is only asked once typing pauses.
+     * @param text Current text of the search box
+     */
+    public void onSearchTextChanged(String text) {
+        String key = SearchCache.normalize(text);
+        if (extendsBase(key)) {
+            songs.setValue(filterLocally(baseSongs, key));
+        }
+        queryPipeline.onTextChanged(text);
+    }
+
+    /**
+     * Search right away, e.g. when the user presses the search key
+     * @param text Current text of the search box
+     */
+    public void submitSearch(String text) {
+        queryPipeline.submit(text);
+    }
+
+    /**
+     * Report the visible range of the song list so more pages can be loaded
+     * @param firstVisible First visible adapter position
+     * @param lastVisible Last visible adapter position
+     */
+    public void onListScrolled(int firstVisible, int lastVisible) {
+        if (pagingSource != null) {
+            pagingSource.onVisibleRange(firstVisible, lastVisible);
+        }
+    }
+
+    private void onTypedQuery(String query) {
+        if (baseComplete && extendsBase(query)) {
+            // Every possible match is already in the base result
+            if (currentRequest != null) {
+                currentRequest.cancel();
+            }
+            releasePaging();
+            generation++;
+            currentQuery = query;
+            isLoading.setValue(false);
+            songs.setValue(filterLocally(baseSongs, query));
+            localOnlySearches++;
+        } else {
+            searchSongs(query);
+        }
+        Log.d(TAG, String.format(Locale.US, "Type-ahead: keystrokes=%d, queries=%d, localOnly=%d",
+                queryPipeline.getKeystrokeCount(), queryPipeline.getEmittedCount(), localOnlySearches));
+    }
+
+    private boolean extendsBase(String query) {
+        return baseQuery != null && query.length() > baseQuery.length() && query.startsWith(baseQuery);
+    }
+
+    // Every word of the query must appear in the title or artist
+    private static List<Song> filterLocally(List<Song> source, String query) {
+        String[] tokens = query.split(" ");
+        List<Song> matches = new ArrayList<>();
+        for (Song song : source) {
+            String haystack = ((song.getTitle() == null ? "" : song.getTitle()) + " "
+                    + (song.getArtist() == null ? "" : song.getArtist())).toLowerCase(Locale.ROOT);
+            boolean all = true;
+            for (String token : tokens) {
+                if (!haystack.contains(token)) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                matches.add(song);
+            }
+        }
+        return matches;
+    }
+
+    // Page 0 may arrive twice (cached, then revalidated); keep the window if it already exists
+    private void showFirstPage(String query, List<Song> result) {
+        baseQuery = SearchCache.normalize(query);
+        baseSongs = result;
+        baseComplete = result.size() < SearchPagingSource.PAGE_SIZE;
+
+        if (pagingSource != null && pagingSource.getQuery().equals(query)) {
+            pagingSource.refreshFirstPage(result);
+            return;
+        }
+        releasePaging();
+        pagingSource = repository.createPagingSource(query, result, new SearchPagingSource.Listener() {
+            @Override
+            public void onWindowChanged(List<Song> window) {
+                songs.setValue(window);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                error.setValue("Lỗi khi tải thêm bài hát: " + e.getMessage());
+            }
+        });
+    }
+
+    private void releasePaging() {
+        if (pagingSource != null) {
+            pagingSource.release();
+            pagingSource = null;
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        if (currentRequest != null) {
+            currentRequest.cancel();
+        }
+        releasePaging();
+        queryPipeline.reset();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+}
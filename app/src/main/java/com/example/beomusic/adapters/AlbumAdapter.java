@@ -111,10 +111,12 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
                 tvCreatedDate.setText("");
             }
 
-            // Load album cover image
-            if (album.getCoverImageUrl() != null && !album.getCoverImageUrl().isEmpty()) {
+            // Load album cover image (the small rendition when the album has one)
+            String coverUrl = album.getCoverThumbnailUrl() != null
+                    ? album.getCoverThumbnailUrl() : album.getCoverImageUrl();
+            if (coverUrl != null && !coverUrl.isEmpty()) {
                 Glide.with(itemView.getContext())
-                        .load(album.getCoverImageUrl())
+                        .load(coverUrl)
                         .placeholder(R.drawable.ic_album_placeholder)
                         .error(R.drawable.ic_album_placeholder)
                         .centerCrop()
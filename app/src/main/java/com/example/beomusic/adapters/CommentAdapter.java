@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
 public class CommentAdapter extends RecyclerView.Adapter<CommentAdapter.CommentViewHolder> {
 
@@ -27,6 +28,11 @@ public class CommentAdapter extends RecyclerView.Adapter<CommentAdapter.CommentV
     private Context context;
     private List<Comment> commentList;
     private SimpleDateFormat dateFormat;
+    private OnCommentLongClickListener longClickListener;
+
+    public interface OnCommentLongClickListener {
+        void onCommentLongClick(Comment comment);
+    }
 
     public CommentAdapter(Context context) {
         this.context = context;
@@ -35,12 +41,25 @@ public class CommentAdapter extends RecyclerView.Adapter<CommentAdapter.CommentV
         Log.d(TAG, "CommentAdapter: Initialized with empty comment list");
     }
 
+    public void setOnCommentLongClickListener(OnCommentLongClickListener listener) {
+        this.longClickListener = listener;
+    }
+
     @NonNull
     @Override
     public CommentViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         Log.d(TAG, "onCreateViewHolder: Creating new view holder");
         View view = LayoutInflater.from(context).inflate(R.layout.item_comment, parent, false);
-        return new CommentViewHolder(view);
+        CommentViewHolder holder = new CommentViewHolder(view);
+        view.setOnLongClickListener(v -> {
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || longClickListener == null) {
+                return false;
+            }
+            longClickListener.onCommentLongClick(commentList.get(position));
+            return true;
+        });
+        return holder;
     }
 
     @Override
@@ -62,9 +81,14 @@ public class CommentAdapter extends RecyclerView.Adapter<CommentAdapter.CommentV
             holder.tvContent.setText("[No content]");
         }
         
+        // Not confirmed by the server yet
+        holder.itemView.setAlpha(comment.isPending() ? 0.5f : 1f);
+
         // Format and display timestamp
         Date timestamp = comment.getTimestamp();
-        if (timestamp != null) {
+        if (comment.isPending()) {
+            holder.tvTimestamp.setText("Đang gửi...");
+        } else if (timestamp != null) {
             try {
                 String formattedDate = dateFormat.format(timestamp);
                 holder.tvTimestamp.setText(formattedDate);
@@ -119,8 +143,96 @@ public class CommentAdapter extends RecyclerView.Adapter<CommentAdapter.CommentV
     public void addComments(List<Comment> comments) {
         Log.d(TAG, "addComments: Adding " + comments.size() + " more comments");
         int oldSize = this.commentList.size();
-        this.commentList.addAll(comments);
-        notifyItemRangeInserted(oldSize, comments.size());
+        for (Comment comment : comments) {
+            // The live listener may already have added it
+            if (indexOf(comment.getCommentId()) < 0) {
+                this.commentList.add(comment);
+            }
+        }
+        notifyItemRangeInserted(oldSize, this.commentList.size() - oldSize);
+    }
+
+    /**
+     * Insert a comment at its place (newest first) or update it in place if it is already
+     * listed. Only the affected row is re-bound, and nothing is re-bound if it didn't change.
+     * @param comment New or updated comment
+     */
+    public void upsertComment(Comment comment) {
+        int index = indexOf(comment.getCommentId());
+        if (index >= 0) {
+            Comment current = commentList.get(index);
+            if (comment.getTimestamp() == null) {
+                // A confirmation without the server time must not lose the one already shown
+                comment.setTimestamp(current.getTimestamp());
+            }
+            if (sameContent(current, comment)) {
+                return;
+            }
+            commentList.remove(index);
+            int target = insertionIndex(comment);
+            commentList.add(target, comment);
+            if (target == index) {
+                notifyItemChanged(index);
+            } else {
+                notifyItemMoved(index, target);
+                notifyItemChanged(target);
+            }
+            return;
+        }
+        int target = insertionIndex(comment);
+        commentList.add(target, comment);
+        notifyItemInserted(target);
+    }
+
+    /**
+     * Take a comment off the list, e.g. before the delete reaches the server. If the delete
+     * fails, pass the returned comment to {@link #upsertComment(Comment)} to put it back.
+     * @param commentId Comment to take off the list
+     * @return The removed comment, or null if it wasn't listed
+     */
+    public Comment removeComment(String commentId) {
+        int index = indexOf(commentId);
+        if (index < 0) {
+            return null;
+        }
+        Comment removed = commentList.remove(index);
+        notifyItemRemoved(index);
+        return removed;
+    }
+
+    private int indexOf(String commentId) {
+        if (commentId == null) {
+            return -1;
+        }
+        for (int i = 0; i < commentList.size(); i++) {
+            if (commentId.equals(commentList.get(i).getCommentId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Newest first; a comment still waiting for its server timestamp counts as newest
+    private int insertionIndex(Comment comment) {
+        Date timestamp = comment.getTimestamp();
+        if (timestamp == null) {
+            return 0;
+        }
+        for (int i = 0; i < commentList.size(); i++) {
+            Date other = commentList.get(i).getTimestamp();
+            if (other != null && other.before(timestamp)) {
+                return i;
+            }
+        }
+        return commentList.size();
+    }
+
+    private static boolean sameContent(Comment a, Comment b) {
+        return Objects.equals(a.getContent(), b.getContent())
+                && Objects.equals(a.getUsername(), b.getUsername())
+                && Objects.equals(a.getUserPhotoUrl(), b.getUserPhotoUrl())
+                && Objects.equals(a.getTimestamp(), b.getTimestamp())
+                && a.isPending() == b.isPending();
     }
 
     public void clear() {
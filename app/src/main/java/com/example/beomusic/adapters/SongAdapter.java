@@ -9,14 +9,23 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.example.beomusic.R;
 import com.example.beomusic.models.Song;
+import com.example.beomusic.models.SongCommentStats;
+import com.example.beomusic.repositories.CommentRepository;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder> {
 
@@ -25,6 +34,21 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
     private OnSongClickListener listener;
     private boolean isAlbumMode = false; // Chế độ Album để hiển thị nút xóa nhanh
 
+    // Số bình luận theo songId, chỉ tải cho các bài đang hiển thị
+    private static final Object COMMENT_STATS_PAYLOAD = new Object();
+    private final CommentRepository commentRepository;
+    private final Map<String, SongCommentStats> commentStats = new HashMap<>();
+    private final Set<String> requestedStats = new HashSet<>();
+    private RecyclerView recyclerView;
+    private final RecyclerView.OnScrollListener statsScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(@NonNull RecyclerView rv, int newState) {
+            if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                loadVisibleCommentStats();
+            }
+        }
+    };
+
     public interface OnSongClickListener {
         void onSongClick(Song song);
         void onMoreClick(Song song, View view);
@@ -35,6 +59,7 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
     public SongAdapter(Context context, OnSongClickListener listener) {
         this.context = context;
         this.listener = listener;
+        this.commentRepository = new CommentRepository(context);
     }
 
     // Setter cho chế độ Album
@@ -44,8 +69,39 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
     }
 
     public void setSongs(List<Song> songs) {
+        // Diff thay vì notifyDataSetChanged để giữ vị trí cuộn khi danh sách trượt trang
+        List<Song> oldSongs = this.songs;
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldSongs.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return songs.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return Objects.equals(oldSongs.get(oldPosition).getSongId(), songs.get(newPosition).getSongId());
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                Song oldSong = oldSongs.get(oldPosition);
+                Song newSong = songs.get(newPosition);
+                return Objects.equals(oldSong.getTitle(), newSong.getTitle())
+                        && Objects.equals(oldSong.getArtist(), newSong.getArtist())
+                        && Objects.equals(oldSong.getThumbnailUrl(), newSong.getThumbnailUrl());
+            }
+        });
         this.songs = songs;
-        notifyDataSetChanged();
+        diff.dispatchUpdatesTo(this);
+        if (recyclerView != null) {
+            // Sau khi layout xong mới biết hàng nào đang hiển thị
+            recyclerView.post(this::loadVisibleCommentStats);
+        }
     }
     
     public List<Song> getSongs(){
@@ -65,17 +121,87 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         holder.bind(song);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull SongViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(COMMENT_STATS_PAYLOAD)) {
+            holder.bindCommentCount(songs.get(position));
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
     @Override
     public int getItemCount() {
         return songs.size();
     }
 
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+        recyclerView.addOnScrollListener(statsScrollListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        recyclerView.removeOnScrollListener(statsScrollListener);
+        this.recyclerView = null;
+    }
+
+    /**
+     * Tải số bình luận của các bài đang hiển thị mà chưa có, gộp thành truy vấn whereIn
+     */
+    private void loadVisibleCommentStats() {
+        if (recyclerView == null || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        List<String> songIds = new ArrayList<>();
+        for (int i = first; i <= last && i < songs.size(); i++) {
+            String songId = songs.get(i).getSongId();
+            if (songId != null && requestedStats.add(songId)) {
+                songIds.add(songId);
+            }
+        }
+        if (songIds.isEmpty()) {
+            return;
+        }
+
+        commentRepository.getCommentStats(songIds, new CommentRepository.CommentStatsCallback() {
+            @Override
+            public void onSuccess(List<SongCommentStats> stats) {
+                for (SongCommentStats songStats : stats) {
+                    commentStats.put(songStats.getSongId(), songStats);
+                    for (int i = 0; i < songs.size(); i++) {
+                        if (songStats.getSongId().equals(songs.get(i).getSongId())) {
+                            notifyItemChanged(i, COMMENT_STATS_PAYLOAD);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                // Thử lại ở lần cuộn sau
+                requestedStats.removeAll(songIds);
+            }
+        });
+    }
+
     class SongViewHolder extends RecyclerView.ViewHolder {
         ImageView imgSong;
         TextView tvSongName;
         TextView tvArtistName;
         ImageButton btnMore;
         ImageButton btnRemove;
+        TextView tvCommentCount;
 
         public SongViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -84,6 +210,7 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
             tvArtistName = itemView.findViewById(R.id.tvArtistName);
             btnMore = itemView.findViewById(R.id.btnMore);
             btnRemove = itemView.findViewById(R.id.btnRemove); // Nút xóa nhanh (thêm trong layout)
+            tvCommentCount = itemView.findViewById(R.id.tvCommentCount);
 
             itemView.setOnClickListener(v -> {
                 int position = getAdapterPosition();
@@ -119,10 +246,25 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
                 btnRemove.setVisibility(isAlbumMode ? View.VISIBLE : View.GONE);
             }
 
+            bindCommentCount(song);
+
             // Sử dụng Glide để load ảnh
             Glide.with(context)
                     .load(song.getThumbnailUrl())
                     .into(imgSong);
         }
+
+        void bindCommentCount(Song song) {
+            if (tvCommentCount == null) {
+                return;
+            }
+            SongCommentStats stats = commentStats.get(song.getSongId());
+            if (stats != null && stats.getCommentCount() > 0) {
+                tvCommentCount.setText(stats.getCommentCount() + " bình luận");
+                tvCommentCount.setVisibility(View.VISIBLE);
+            } else {
+                tvCommentCount.setVisibility(View.GONE);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -11,6 +11,11 @@ public class Album {
     private Date createdDate;
     private Date updatedDate;
     private String coverImageUrl;
+    // Downscaled covers; coverImageUrl keeps the large one for older clients
+    private String coverThumbnailUrl;
+    private String coverLargeUrl;
+    // Set while the album's songs are being deleted; the album is hidden and deletion resumes later
+    private boolean deletionPending;
 
     // Empty constructor required for Firebase
     public Album() {}
@@ -57,6 +62,9 @@ public class Album {
     public Date getCreatedDate() { return createdDate; }
     public Date getUpdatedDate() { return updatedDate; }
     public String getCoverImageUrl() { return coverImageUrl; }
+    public String getCoverThumbnailUrl() { return coverThumbnailUrl; }
+    public String getCoverLargeUrl() { return coverLargeUrl; }
+    public boolean isDeletionPending() { return deletionPending; }
 
     // Setters
     public void setAlbumId(String albumId) { this.albumId = albumId; }
@@ -67,6 +75,9 @@ public class Album {
     public void setCreatedDate(Date createdDate) { this.createdDate = createdDate; }
     public void setUpdatedDate(Date updatedDate) { this.updatedDate = updatedDate; }
     public void setCoverImageUrl(String coverImageUrl) { this.coverImageUrl = coverImageUrl; }
+    public void setCoverThumbnailUrl(String coverThumbnailUrl) { this.coverThumbnailUrl = coverThumbnailUrl; }
+    public void setCoverLargeUrl(String coverLargeUrl) { this.coverLargeUrl = coverLargeUrl; }
+    public void setDeletionPending(boolean deletionPending) { this.deletionPending = deletionPending; }
 
     // Increment song count when adding a song
     public void incrementSongCount() {
@@ -1,6 +1,8 @@
 package com.example.beomusic.models;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 public class AlbumSong {
     private String id;
@@ -8,6 +10,14 @@ public class AlbumSong {
     private String songId;
     private Date addedDate;
 
+    // Bản sao gọn của bài hát để mở album chỉ cần một truy vấn (không phải đọc thêm "songs")
+    private String title;
+    private String artist;
+    private String thumbnailUrl;
+    private String previewUrl;
+    private int duration;
+    private Date snapshotDate;
+
     // Empty constructor required for Firebase
     public AlbumSong() {}
 
@@ -19,6 +29,12 @@ public class AlbumSong {
         this.addedDate = new Date();
     }
     
+    // Constructor for adding a song with its snapshot embedded
+    public AlbumSong(String albumId, Song song) {
+        this(albumId, song.getSongId());
+        applySnapshot(song);
+    }
+
     // Constructor with custom ID and date
     public AlbumSong(String id, String albumId, String songId, Date addedDate) {
         this.id = id;
@@ -32,12 +48,65 @@ public class AlbumSong {
     public String getAlbumId() { return albumId; }
     public String getSongId() { return songId; }
     public Date getAddedDate() { return addedDate; }
+    public String getTitle() { return title; }
+    public String getArtist() { return artist; }
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public String getPreviewUrl() { return previewUrl; }
+    public int getDuration() { return duration; }
+    public Date getSnapshotDate() { return snapshotDate; }
 
     // Setters
     public void setId(String id) { this.id = id; }
     public void setAlbumId(String albumId) { this.albumId = albumId; }
     public void setSongId(String songId) { this.songId = songId; }
     public void setAddedDate(Date addedDate) { this.addedDate = addedDate; }
+    public void setTitle(String title) { this.title = title; }
+    public void setArtist(String artist) { this.artist = artist; }
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+    public void setPreviewUrl(String previewUrl) { this.previewUrl = previewUrl; }
+    public void setDuration(int duration) { this.duration = duration; }
+    public void setSnapshotDate(Date snapshotDate) { this.snapshotDate = snapshotDate; }
+
+    // Copy the displayed song fields into this entry
+    public void applySnapshot(Song song) {
+        this.title = song.getTitle();
+        this.artist = song.getArtist();
+        this.thumbnailUrl = song.getThumbnailUrl();
+        this.previewUrl = song.getFilePath();
+        this.duration = song.getDuration();
+        this.snapshotDate = new Date();
+    }
+
+    // Entries written before snapshots existed (or by older clients) have no title
+    public boolean hasSnapshot() {
+        return snapshotDate != null && title != null;
+    }
+
+    // Build a playable Song from the snapshot
+    public Song toSong() {
+        Song song = new Song();
+        song.setSongId(songId);
+        song.setTitle(title);
+        song.setArtist(artist);
+        song.setThumbnailUrl(thumbnailUrl);
+        song.setFilePath(previewUrl);
+        song.setDuration(duration);
+        song.setAddedDate(addedDate);
+        return song;
+    }
+
+    // Snapshot fields as a Firestore update map (used to repair existing entries)
+    public static Map<String, Object> snapshotFields(String title, String artist, String thumbnailUrl,
+                                                     String previewUrl, int duration) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("title", title);
+        fields.put("artist", artist);
+        fields.put("thumbnailUrl", thumbnailUrl);
+        fields.put("previewUrl", previewUrl);
+        fields.put("duration", duration);
+        fields.put("snapshotDate", new Date());
+        return fields;
+    }
 
     // Utility method to generate a consistent ID
     public static String generateId(String albumId, String songId) {
@@ -1,6 +1,7 @@
 package com.example.beomusic.models;
 
 import com.google.firebase.firestore.DocumentId;
+import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.ServerTimestamp;
 
 import java.io.Serializable;
@@ -16,6 +17,8 @@ public class Comment implements Serializable {
     @ServerTimestamp
     private Date timestamp;
     private String userPhotoUrl;
+    // Shown but not yet confirmed by the server; never written to Firestore
+    private boolean pending;
 
     // Empty constructor for Firestore
     public Comment() {
@@ -95,4 +98,14 @@ public class Comment implements Serializable {
     public void setUserPhotoUrl(String userPhotoUrl) {
         this.userPhotoUrl = userPhotoUrl;
     }
-} 
\ No newline at end of file
+
+    @Exclude
+    public boolean isPending() {
+        return pending;
+    }
+
+    @Exclude
+    public void setPending(boolean pending) {
+        this.pending = pending;
+    }
+}
@@ -45,6 +45,13 @@ public class Song implements Serializable {
         this.playCount = playCount;
     }
 
+    // Constructor sao chép, để cache và danh sách dùng chung không bị sửa qua tham chiếu
+    public Song(Song other) {
+        this(other.songId, other.title, other.artist, other.duration, other.sourceType,
+                other.filePath, other.thumbnailUrl, other.genre,
+                other.addedDate != null ? new Date(other.addedDate.getTime()) : null, other.playCount);
+    }
+
     // Getters
     public String getSongId() { return songId; }
     public String getId() { return songId; }
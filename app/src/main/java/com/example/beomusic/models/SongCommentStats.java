@@ -0,0 +1,113 @@
+package com.example.beomusic.models;
+
+import com.google.firebase.firestore.DocumentId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * song_comment_stats/{songId}: comment count and newest comments of one song, written in
+ * the same transaction as the comment itself so song lists never have to read the thread.
+ * The newest comments are a map keyed by comment id, so a delete can drop its entry with
+ * a plain field update, without reading the document first.
+ */
+public class SongCommentStats {
+    public static final int MAX_LATEST = 3;
+    public static final String FIELD_COMMENT_COUNT = "commentCount";
+    public static final String FIELD_LATEST_COMMENTS = "latestComments";
+    public static final String FIELD_LAST_COMMENT_ID = "lastCommentId";
+    private static final int PREVIEW_LENGTH = 100;
+    // Missing timestamps count as newest
+    private static final Comparator<Preview> NEWEST_FIRST = (a, b) -> {
+        if (a.getTimestamp() == null || b.getTimestamp() == null) {
+            return a.getTimestamp() == null ? (b.getTimestamp() == null ? 0 : -1) : 1;
+        }
+        return b.getTimestamp().compareTo(a.getTimestamp());
+    };
+
+    @DocumentId
+    private String songId;
+    private long commentCount;
+    // Comment id -> preview, at most MAX_LATEST
+    private Map<String, Preview> latestComments = new HashMap<>();
+    // Comment added or deleted by the last write; firestore.rules checks it against that comment
+    private String lastCommentId;
+
+    // Rút gọn của một bình luận, đủ để hiện dưới bài hát
+    public static class Preview {
+        private String commentId;
+        private String userId;
+        private String username;
+        private String content;
+        // Client time, only used to order the previews
+        private Date timestamp;
+
+        // Empty constructor required for Firebase
+        public Preview() {}
+
+        public Preview(Comment comment, Date timestamp) {
+            this.commentId = comment.getCommentId();
+            this.userId = comment.getUserId();
+            this.username = comment.getUsername();
+            String text = comment.getContent();
+            this.content = text != null && text.length() > PREVIEW_LENGTH ? text.substring(0, PREVIEW_LENGTH) : text;
+            this.timestamp = timestamp;
+        }
+
+        public String getCommentId() { return commentId; }
+        public String getUserId() { return userId; }
+        public String getUsername() { return username; }
+        public String getContent() { return content; }
+        public Date getTimestamp() { return timestamp; }
+
+        public void setCommentId(String commentId) { this.commentId = commentId; }
+        public void setUserId(String userId) { this.userId = userId; }
+        public void setUsername(String username) { this.username = username; }
+        public void setContent(String content) { this.content = content; }
+        public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
+    }
+
+    // Empty constructor required for Firebase
+    public SongCommentStats() {}
+
+    public SongCommentStats(String songId) {
+        this.songId = songId;
+    }
+
+    public String getSongId() { return songId; }
+    public long getCommentCount() { return commentCount; }
+    public Map<String, Preview> getLatestComments() { return latestComments; }
+    public String getLastCommentId() { return lastCommentId; }
+
+    public void setSongId(String songId) { this.songId = songId; }
+    public void setCommentCount(long commentCount) { this.commentCount = commentCount; }
+    public void setLatestComments(Map<String, Preview> latestComments) { this.latestComments = latestComments; }
+    public void setLastCommentId(String lastCommentId) { this.lastCommentId = lastCommentId; }
+
+    /**
+     * @return The latest comments, newest first
+     */
+    public List<Preview> latestNewestFirst() {
+        List<Preview> previews = latestComments != null ? new ArrayList<>(latestComments.values()) : new ArrayList<>();
+        previews.sort(NEWEST_FIRST);
+        return previews;
+    }
+
+    /**
+     * Count a new comment and keep it among the latest ones
+     */
+    public void applyAdded(Comment comment, Date timestamp) {
+        commentCount++;
+        lastCommentId = comment.getCommentId();
+        List<Preview> previews = latestNewestFirst();
+        previews.add(0, new Preview(comment, timestamp));
+        latestComments = new HashMap<>();
+        for (Preview preview : previews.subList(0, Math.min(MAX_LATEST, previews.size()))) {
+            latestComments.put(preview.getCommentId(), preview);
+        }
+    }
+}
@@ -3,26 +3,86 @@ package com.example.beomusic.repositories;
 import com.example.beomusic.models.Album;
 import com.example.beomusic.models.AlbumSong;
 import com.example.beomusic.models.Song;
+import com.example.beomusic.utils.BatchFetcher;
+import com.example.beomusic.utils.CoverImageRenditions;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
 import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageMetadata;
 import com.google.firebase.storage.StorageReference;
 import com.google.firebase.storage.UploadTask;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 /**
  * Repository class for handling album operations
  */
 public class AlbumRepository {
+    private static final String TAG = "AlbumRepository";
+
+    // Firestore caps whereIn at 30 values per query
+    private static final int WHERE_IN_LIMIT = 30;
+    private static final int MAX_PARALLEL_QUERIES = 4;
+    private static final int MAX_ATTEMPTS = 3;
+    // Firestore allows 500 writes per batch; one is kept for the songCount update
+    private static final int MAX_BATCH_ENTRIES = 499;
+    // Lookup and batch, repeated when another client changed the same entries in between
+    private static final int MAX_ENTRY_ATTEMPTS = 2;
+    private static final int MAX_BATCH_WRITES = 500;
+    // Albums whose deletion is running in this process
+    private static final Set<String> deletionsInProgress = new HashSet<>();
+
+    private static final String UPLOADS_PREF_NAME = "BeoMusicUploads";
+    // Stored next to each session: which file the session was uploading
+    private static final String FINGERPRINT_SUFFIX = "#file";
+    private static final int MAX_UPLOAD_ATTEMPTS = 3;
+    // Cover images are decoded and encoded here, off the main thread
+    private static final Executor imageExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
     private final FirebaseFirestore firestore;
     private final FirebaseStorage storage;
+    private final BatchFetcher<String, Song> songFetcher;
+    // Which album_songs ids exist, by document id
+    private final BatchFetcher<String, String> entryIdFetcher;
+    private final Context appContext;
+    // Storage path -> resumable upload session Uri
+    private final SharedPreferences uploadSessions;
 
     public interface AlbumCallback {
         void onSuccess(Album album);
@@ -39,9 +99,67 @@ public class AlbumRepository {
         void onError(String errorMessage);
     }
 
+    public interface AlbumsPageCallback {
+        void onSuccess(AlbumsPage page);
+        void onError(String errorMessage);
+    }
+
+    /**
+     * One page of a user's albums plus the cursor for the next one
+     */
+    public static class AlbumsPage {
+        public final List<Album> albums;
+        // Last document of this page, passed back to load the following page
+        public final DocumentSnapshot cursor;
+        public final boolean hasMore;
+
+        AlbumsPage(List<Album> albums, DocumentSnapshot cursor, boolean hasMore) {
+            this.albums = albums;
+            this.cursor = cursor;
+            this.hasMore = hasMore;
+        }
+    }
+
+    public interface DeleteProgressListener {
+        /**
+         * @param deletedSongs Entries deleted so far
+         * @param totalSongs Song count of the album when deletion started
+         */
+        void onProgress(int deletedSongs, int totalSongs);
+    }
+
     public AlbumRepository() {
         firestore = FirebaseFirestore.getInstance();
         storage = FirebaseStorage.getInstance();
+        appContext = FirebaseApp.getInstance().getApplicationContext();
+        uploadSessions = appContext.getSharedPreferences(UPLOADS_PREF_NAME, Context.MODE_PRIVATE);
+        songFetcher = new BatchFetcher<>((songIds, batchCallback) -> firestore.collection("songs")
+                .whereIn("songId", songIds)
+                .get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    List<Song> songs = new ArrayList<>();
+                    for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
+                        Song song = doc.toObject(Song.class);
+                        if (song != null) {
+                            songs.add(song);
+                        }
+                    }
+                    batchCallback.onSuccess(songs);
+                })
+                .addOnFailureListener(batchCallback::onError),
+                Song::getSongId, WHERE_IN_LIMIT, MAX_PARALLEL_QUERIES, MAX_ATTEMPTS);
+        entryIdFetcher = new BatchFetcher<>((entryIds, batchCallback) -> firestore.collection("album_songs")
+                .whereIn(FieldPath.documentId(), entryIds)
+                .get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    List<String> found = new ArrayList<>();
+                    for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
+                        found.add(doc.getId());
+                    }
+                    batchCallback.onSuccess(found);
+                })
+                .addOnFailureListener(batchCallback::onError),
+                entryId -> entryId, WHERE_IN_LIMIT, MAX_PARALLEL_QUERIES, MAX_ATTEMPTS);
     }
 
     /**
@@ -54,7 +172,8 @@ public class AlbumRepository {
      */
     public void createAlbum(String title, String description, String userId, 
                            byte[] coverImageBytes, AlbumCallback callback) {
-        // Generate unique album ID
+        // Generate unique album ID. A new id per call means a retried create uploads its
+        // cover from scratch; only updateAlbum/updateAlbumCover can resume an upload.
         String albumId = UUID.randomUUID().toString();
         
         // Create album object
@@ -62,11 +181,12 @@ public class AlbumRepository {
         
         // If cover image is provided, upload it first
         if (coverImageBytes != null && coverImageBytes.length > 0) {
-            uploadCoverImage(albumId, coverImageBytes, new AlbumCallback() {
+            uploadCoverImage(albumId,
+                    () -> CoverImageRenditions.create(appContext, coverImageBytes, albumId), new AlbumCallback() {
                 @Override
                 public void onSuccess(Album updatedAlbum) {
-                    // Update album with cover image URL
-                    album.setCoverImageUrl(updatedAlbum.getCoverImageUrl());
+                    // Update album with cover image URLs
+                    applyCover(album, updatedAlbum);
                     
                     // Save album to Firestore
                     saveAlbum(album, callback);
@@ -92,11 +212,12 @@ public class AlbumRepository {
     public void updateAlbum(Album album, byte[] coverImageBytes, AlbumCallback callback) {
         // If cover image is provided, upload it first
         if (coverImageBytes != null && coverImageBytes.length > 0) {
-            uploadCoverImage(album.getAlbumId(), coverImageBytes, new AlbumCallback() {
+            uploadCoverImage(album.getAlbumId(),
+                    () -> CoverImageRenditions.create(appContext, coverImageBytes, album.getAlbumId()), new AlbumCallback() {
                 @Override
                 public void onSuccess(Album updatedAlbum) {
-                    // Update album with new cover image URL
-                    album.setCoverImageUrl(updatedAlbum.getCoverImageUrl());
+                    // Update album with new cover image URLs
+                    applyCover(album, updatedAlbum);
                     
                     // Save updated album to Firestore
                     saveAlbum(album, callback);
@@ -119,31 +240,103 @@ public class AlbumRepository {
      * @param callback Callback for result
      */
     public void deleteAlbum(String albumId, AlbumCallback callback) {
-        // First delete all album-song relationships
+        deleteAlbum(albumId, null, callback);
+    }
+
+    /**
+     * Delete an album and all of its songs. The album is first marked deletionPending
+     * (so it disappears from lists), its album_songs entries are deleted in pages of up
+     * to one full batch, and the album document is deleted last. If the process dies
+     * midway, {@link #getUserAlbums} picks the deletion up again.
+     * @param albumId Album ID to delete
+     * @param progressListener Optional progress listener
+     * @param callback Callback for result
+     */
+    public void deleteAlbum(String albumId, DeleteProgressListener progressListener, AlbumCallback callback) {
+        synchronized (deletionsInProgress) {
+            if (!deletionsInProgress.add(albumId)) {
+                callback.onError("Album đang được xóa");
+                return;
+            }
+        }
+        DocumentReference albumRef = firestore.collection("albums").document(albumId);
+        albumRef.get()
+                .continueWithTask(task -> {
+                    Album album = task.getResult().toObject(Album.class);
+                    int total = album != null ? album.getSongCount() : 0;
+                    return albumRef.update("deletionPending", true)
+                            .continueWith(updateTask -> {
+                                if (!updateTask.isSuccessful()) {
+                                    throw updateTask.getException();
+                                }
+                                return total;
+                            });
+                })
+                .addOnSuccessListener(total -> deleteAlbumSongsPage(albumId, 0, total, progressListener, callback))
+                .addOnFailureListener(e -> finishDeletion(albumId, callback, "Lỗi khi xóa album: " + e.getMessage()));
+    }
+
+    private void deleteAlbumSongsPage(String albumId, int deleted, int total,
+                                      DeleteProgressListener progressListener, AlbumCallback callback) {
         firestore.collection("album_songs")
                 .whereEqualTo("albumId", albumId)
+                .limit(MAX_BATCH_WRITES)
                 .get()
                 .addOnSuccessListener(queryDocumentSnapshots -> {
-                    // Delete each album-song document
+                    if (queryDocumentSnapshots.isEmpty()) {
+                        deleteAlbumDocument(albumId, callback);
+                        return;
+                    }
+
+                    WriteBatch batch = firestore.batch();
                     for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
-                        doc.getReference().delete();
+                        batch.delete(doc.getReference());
                     }
-                    
-                    // Then delete the album document
-                    firestore.collection("albums").document(albumId)
-                            .delete()
-                            .addOnSuccessListener(aVoid -> callback.onSuccess(null))
-                            .addOnFailureListener(e -> 
-                                callback.onError("Lỗi khi xóa album: " + e.getMessage())
-                            );
+                    int deletedNow = deleted + queryDocumentSnapshots.size();
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> {
+                                if (progressListener != null) {
+                                    progressListener.onProgress(deletedNow, Math.max(total, deletedNow));
+                                }
+                                deleteAlbumSongsPage(albumId, deletedNow, total, progressListener, callback);
+                            })
+                            .addOnFailureListener(e -> finishDeletion(albumId, callback,
+                                    "Lỗi khi xóa bài hát trong album: " + e.getMessage()));
                 })
-                .addOnFailureListener(e -> 
-                    callback.onError("Lỗi khi xóa bài hát trong album: " + e.getMessage())
-                );
+                .addOnFailureListener(e -> finishDeletion(albumId, callback,
+                        "Lỗi khi xóa bài hát trong album: " + e.getMessage()));
+    }
+
+    private void deleteAlbumDocument(String albumId, AlbumCallback callback) {
+        // Ảnh bìa có thể không tồn tại, lỗi ở đây không chặn việc xóa album
+        StorageReference covers = storage.getReference().child("album_covers");
+        List<Task<Void>> coverDeletes = new ArrayList<>();
+        coverDeletes.add(covers.child(albumId + ".jpg").delete());
+        for (CoverImageRenditions.Size size : CoverImageRenditions.Size.values()) {
+            coverDeletes.add(covers.child(CoverImageRenditions.fileName(albumId, size)).delete());
+        }
+        Tasks.whenAllComplete(coverDeletes)
+                .continueWithTask(task -> firestore.collection("albums").document(albumId).delete())
+                .addOnSuccessListener(aVoid -> finishDeletion(albumId, callback, null))
+                .addOnFailureListener(e -> finishDeletion(albumId, callback, "Lỗi khi xóa album: " + e.getMessage()));
+    }
+
+    private void finishDeletion(String albumId, AlbumCallback callback, String errorMessage) {
+        synchronized (deletionsInProgress) {
+            deletionsInProgress.remove(albumId);
+        }
+        if (errorMessage == null) {
+            Log.d(TAG, "Deleted album " + albumId);
+            callback.onSuccess(null);
+        } else {
+            Log.e(TAG, errorMessage);
+            callback.onError(errorMessage);
+        }
     }
 
     /**
-     * Get all albums for a user
+     * Get all albums for a user. Albums left half-deleted by an earlier run are
+     * skipped and their deletion is resumed in the background.
      * @param userId User ID
      * @param callback Callback for result
      */
@@ -151,22 +344,74 @@ public class AlbumRepository {
         firestore.collection("albums")
                 .whereEqualTo("userId", userId)
                 .orderBy("createdDate", Query.Direction.DESCENDING)
+                .get()
+                .addOnSuccessListener(queryDocumentSnapshots ->
+                    callback.onSuccess(toVisibleAlbums(queryDocumentSnapshots.getDocuments()))
+                )
+                .addOnFailureListener(e -> 
+                    callback.onError("Lỗi khi lấy danh sách album: " + e.getMessage())
+                );
+    }
+
+    /**
+     * Get one page of a user's albums, newest first
+     * @param userId User ID
+     * @param after Cursor from the previous page, or null for the first page
+     * @param pageSize Albums per page
+     * @param callback Callback for result
+     */
+    public void getUserAlbumsPage(String userId, DocumentSnapshot after, int pageSize, AlbumsPageCallback callback) {
+        Query query = firestore.collection("albums")
+                .whereEqualTo("userId", userId)
+                .orderBy("createdDate", Query.Direction.DESCENDING);
+        if (after != null) {
+            query = query.startAfter(after);
+        }
+        query.limit(pageSize)
                 .get()
                 .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Album> albums = new ArrayList<>();
-                    for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
-                        Album album = doc.toObject(Album.class);
-                        if (album != null) {
-                            albums.add(album);
-                        }
-                    }
-                    callback.onSuccess(albums);
+                    List<DocumentSnapshot> docs = queryDocumentSnapshots.getDocuments();
+                    DocumentSnapshot cursor = docs.isEmpty() ? after : docs.get(docs.size() - 1);
+                    callback.onSuccess(new AlbumsPage(toVisibleAlbums(docs), cursor, docs.size() == pageSize));
                 })
-                .addOnFailureListener(e -> 
+                .addOnFailureListener(e ->
                     callback.onError("Lỗi khi lấy danh sách album: " + e.getMessage())
                 );
     }
 
+    // Skip albums left half-deleted by an earlier run and finish deleting them
+    private List<Album> toVisibleAlbums(List<DocumentSnapshot> docs) {
+        List<Album> albums = new ArrayList<>();
+        for (DocumentSnapshot doc : docs) {
+            Album album = doc.toObject(Album.class);
+            if (album == null) {
+                continue;
+            }
+            if (album.isDeletionPending()) {
+                resumeDeletion(album.getAlbumId());
+            } else {
+                albums.add(album);
+            }
+        }
+        return albums;
+    }
+
+    private void resumeDeletion(String albumId) {
+        synchronized (deletionsInProgress) {
+            if (!deletionsInProgress.add(albumId)) {
+                return;
+            }
+        }
+        Log.d(TAG, "Resuming deletion of album " + albumId);
+        deleteAlbumSongsPage(albumId, 0, 0, null, new AlbumCallback() {
+            @Override
+            public void onSuccess(Album album) { }
+
+            @Override
+            public void onError(String errorMessage) { }
+        });
+    }
+
     /**
      * Get a specific album by ID
      * @param albumId Album ID
@@ -189,57 +434,35 @@ public class AlbumRepository {
     }
 
     /**
-     * Add a song to an album
+     * Add a song to an album. The entry id is {@link AlbumSong#generateId}, so the
+     * duplicate check is a document read inside the same transaction as the write.
      * @param albumId Album ID
-     * @param songId Song ID
+     * @param song Song to add; its details are stored as the entry snapshot
      * @param callback Callback for result
      */
-    public void addSongToAlbum(String albumId, String songId, AlbumCallback callback) {
-        // First check if the song already exists in the album
-        firestore.collection("album_songs")
-                .whereEqualTo("albumId", albumId)
-                .whereEqualTo("songId", songId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (!queryDocumentSnapshots.isEmpty()) {
-                        callback.onError("Bài hát đã tồn tại trong album");
-                        return;
-                    }
-                    
-                    // Create album-song relationship
-                    String relationId = UUID.randomUUID().toString();
-                    AlbumSong albumSong = new AlbumSong(relationId, albumId, songId, new Date());
-                    
-                    firestore.collection("album_songs").document(relationId)
-                            .set(albumSong)
-                            .addOnSuccessListener(aVoid -> {
-                                // Update song count in album
-                                DocumentReference albumRef = firestore.collection("albums").document(albumId);
-                                firestore.runTransaction(transaction -> {
-                                    DocumentSnapshot albumSnapshot = transaction.get(albumRef);
-                                    Album album = albumSnapshot.toObject(Album.class);
-                                    if (album != null) {
-                                        album.incrementSongCount();
-                                        transaction.update(albumRef, "songCount", album.getSongCount());
-                                        transaction.update(albumRef, "updatedDate", new Date());
-                                    }
-                                    return null;
-                                })
-                                .addOnSuccessListener(aVoid2 -> {
-                                    // Get updated album
-                                    getAlbum(albumId, callback);
-                                })
-                                .addOnFailureListener(e -> 
-                                    callback.onError("Lỗi khi cập nhật số lượng bài hát: " + e.getMessage())
-                                );
-                            })
-                            .addOnFailureListener(e -> 
-                                callback.onError("Lỗi khi thêm bài hát vào album: " + e.getMessage())
-                            );
-                })
-                .addOnFailureListener(e -> 
-                    callback.onError("Lỗi khi kiểm tra bài hát: " + e.getMessage())
-                );
+    public void addSongToAlbum(String albumId, Song song, AlbumCallback callback) {
+        AlbumSong albumSong = new AlbumSong(albumId, song);
+        DocumentReference albumRef = firestore.collection("albums").document(albumId);
+        DocumentReference entryRef = firestore.collection("album_songs").document(albumSong.getId());
+
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot entry = transaction.get(entryRef);
+            Album album = transaction.get(albumRef).toObject(Album.class);
+            if (album == null) {
+                throw new FirebaseFirestoreException("Không tìm thấy album", FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+            if (entry.exists()) {
+                throw new FirebaseFirestoreException("Bài hát đã tồn tại trong album",
+                        FirebaseFirestoreException.Code.ALREADY_EXISTS);
+            }
+
+            transaction.set(entryRef, albumSong);
+            album.incrementSongCount();
+            transaction.update(albumRef, "songCount", album.getSongCount(), "updatedDate", album.getUpdatedDate());
+            return album;
+        })
+        .addOnSuccessListener(callback::onSuccess)
+        .addOnFailureListener(e -> callback.onError(describe(e, "Lỗi khi thêm bài hát vào album: ")));
     }
 
     /**
@@ -249,51 +472,206 @@ public class AlbumRepository {
      * @param callback Callback for result
      */
     public void removeSongFromAlbum(String albumId, String songId, AlbumCallback callback) {
-        firestore.collection("album_songs")
-                .whereEqualTo("albumId", albumId)
-                .whereEqualTo("songId", songId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (queryDocumentSnapshots.isEmpty()) {
-                        callback.onError("Bài hát không tồn tại trong album");
+        DocumentReference albumRef = firestore.collection("albums").document(albumId);
+        DocumentReference entryRef = firestore.collection("album_songs")
+                .document(AlbumSong.generateId(albumId, songId));
+
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot entry = transaction.get(entryRef);
+            Album album = transaction.get(albumRef).toObject(Album.class);
+            if (album == null) {
+                throw new FirebaseFirestoreException("Không tìm thấy album", FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+            if (!entry.exists()) {
+                throw new FirebaseFirestoreException("Bài hát không tồn tại trong album",
+                        FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+
+            transaction.delete(entryRef);
+            album.decrementSongCount();
+            transaction.update(albumRef, "songCount", album.getSongCount(), "updatedDate", album.getUpdatedDate());
+            return album;
+        })
+        .addOnSuccessListener(callback::onSuccess)
+        .addOnFailureListener(e -> callback.onError(describe(e, "Lỗi khi xóa bài hát khỏi album: ")));
+    }
+
+    // Messages thrown from our own transactions are already user-facing
+    private static String describe(Exception e, String prefix) {
+        if (e instanceof FirebaseFirestoreException) {
+            FirebaseFirestoreException.Code code = ((FirebaseFirestoreException) e).getCode();
+            if (code == FirebaseFirestoreException.Code.NOT_FOUND
+                    || code == FirebaseFirestoreException.Code.ALREADY_EXISTS) {
+                return e.getMessage();
+            }
+        }
+        return prefix + e.getMessage();
+    }
+
+    /**
+     * Add several songs to an album at once. Entry ids are deterministic, so which songs
+     * are already there is found with whereIn queries on those ids (30 per query, run in
+     * parallel) while the album is read; the new entries and one songCount increment are
+     * then written in one batch. Songs already in the album (or repeated in the list) are
+     * skipped. firestore.rules only lets a batch that changes songCount create entries,
+     * so if another client added one of the songs meanwhile the batch is rejected instead
+     * of counting it twice, and the check runs once more.
+     * @param albumId Album ID
+     * @param songs Songs to add, at most 499; their details are stored as the entry snapshot
+     * @param callback Callback for result
+     */
+    public void addSongsToAlbum(String albumId, List<Song> songs, AlbumCallback callback) {
+        Map<String, AlbumSong> requested = new LinkedHashMap<>();
+        for (Song song : songs) {
+            if (song.getSongId() != null) {
+                AlbumSong albumSong = new AlbumSong(albumId, song);
+                requested.put(albumSong.getId(), albumSong);
+            }
+        }
+        // One batch is at most 500 writes, the album update included
+        if (requested.size() > MAX_BATCH_ENTRIES) {
+            callback.onError("Chỉ có thể thêm tối đa " + MAX_BATCH_ENTRIES + " bài hát mỗi lần");
+            return;
+        }
+        addEntries(albumId, requested, 1, callback);
+    }
+
+    private void addEntries(String albumId, Map<String, AlbumSong> requested, int attempt, AlbumCallback callback) {
+        readAlbumWithEntries(albumId, requested.keySet(), (album, existing) -> {
+            List<AlbumSong> toAdd = new ArrayList<>();
+            for (AlbumSong albumSong : requested.values()) {
+                if (!existing.contains(albumSong.getId())) {
+                    toAdd.add(albumSong);
+                }
+            }
+            if (toAdd.isEmpty()) {
+                callback.onSuccess(album);
+                return;
+            }
+
+            WriteBatch batch = firestore.batch();
+            for (AlbumSong albumSong : toAdd) {
+                batch.set(firestore.collection("album_songs").document(albumSong.getId()), albumSong);
+            }
+            Date updatedDate = new Date();
+            batch.update(firestore.collection("albums").document(albumId),
+                    "songCount", FieldValue.increment(toAdd.size()), "updatedDate", updatedDate);
+            batch.commit()
+                    .addOnSuccessListener(aVoid -> {
+                        album.setSongCount(album.getSongCount() + toAdd.size());
+                        album.setUpdatedDate(updatedDate);
+                        callback.onSuccess(album);
+                    })
+                    .addOnFailureListener(e -> {
+                        if (isConcurrentChange(e) && attempt < MAX_ENTRY_ATTEMPTS) {
+                            Log.d(TAG, "addSongsToAlbum: Entries changed meanwhile, checking again");
+                            addEntries(albumId, requested, attempt + 1, callback);
+                            return;
+                        }
+                        callback.onError("Lỗi khi thêm bài hát vào album: " + e.getMessage());
+                    });
+        }, callback);
+    }
+
+    /**
+     * Remove several songs from an album at once, in one batch with one songCount
+     * increment. Only the entries of the given songs are looked up, with whereIn queries
+     * on their ids; songs that are not in the album are ignored. firestore.rules rejects
+     * deleting an entry that is already gone, so a concurrent removal can't uncount a
+     * song twice.
+     * @param albumId Album ID
+     * @param songIds Song IDs to remove, at most 499
+     * @param callback Callback for result
+     */
+    public void removeSongsFromAlbum(String albumId, List<String> songIds, AlbumCallback callback) {
+        Set<String> requested = new LinkedHashSet<>();
+        for (String songId : songIds) {
+            requested.add(AlbumSong.generateId(albumId, songId));
+        }
+        if (requested.size() > MAX_BATCH_ENTRIES) {
+            callback.onError("Chỉ có thể xóa tối đa " + MAX_BATCH_ENTRIES + " bài hát mỗi lần");
+            return;
+        }
+        removeEntries(albumId, requested, 1, callback);
+    }
+
+    private void removeEntries(String albumId, Set<String> requested, int attempt, AlbumCallback callback) {
+        readAlbumWithEntries(albumId, requested, (album, existing) -> {
+            if (existing.isEmpty()) {
+                callback.onSuccess(album);
+                return;
+            }
+
+            WriteBatch batch = firestore.batch();
+            for (String entryId : existing) {
+                batch.delete(firestore.collection("album_songs").document(entryId));
+            }
+            Date updatedDate = new Date();
+            batch.update(firestore.collection("albums").document(albumId),
+                    "songCount", FieldValue.increment(-existing.size()), "updatedDate", updatedDate);
+            batch.commit()
+                    .addOnSuccessListener(aVoid -> {
+                        album.setSongCount(Math.max(0, album.getSongCount() - existing.size()));
+                        album.setUpdatedDate(updatedDate);
+                        callback.onSuccess(album);
+                    })
+                    .addOnFailureListener(e -> {
+                        if (isConcurrentChange(e) && attempt < MAX_ENTRY_ATTEMPTS) {
+                            Log.d(TAG, "removeSongsFromAlbum: Entries changed meanwhile, checking again");
+                            removeEntries(albumId, requested, attempt + 1, callback);
+                            return;
+                        }
+                        callback.onError("Lỗi khi xóa bài hát khỏi album: " + e.getMessage());
+                    });
+        }, callback);
+    }
+
+    // The rules reject a batch whose entries changed since they were looked up
+    private static boolean isConcurrentChange(Exception e) {
+        return e instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.PERMISSION_DENIED;
+    }
+
+    private interface AlbumEntriesCallback {
+        /**
+         * @param existing The requested entry ids that exist
+         */
+        void onLoaded(Album album, Set<String> existing);
+    }
+
+    /**
+     * Read an album document and, in parallel, which of the given album_songs entries exist
+     */
+    private void readAlbumWithEntries(String albumId, Set<String> entryIds, AlbumEntriesCallback onLoaded,
+                                      AlbumCallback callback) {
+        Task<DocumentSnapshot> albumTask = firestore.collection("albums").document(albumId).get();
+        TaskCompletionSource<Set<String>> entries = new TaskCompletionSource<>();
+        entryIdFetcher.fetch(new ArrayList<>(entryIds), result -> {
+            if (result.isComplete()) {
+                entries.setResult(new LinkedHashSet<>(result.getValues()));
+            } else {
+                entries.setException(result.getLastError());
+            }
+        });
+
+        Tasks.whenAll(albumTask, entries.getTask())
+                .addOnSuccessListener(aVoid -> {
+                    Album album = albumTask.getResult().toObject(Album.class);
+                    if (album == null) {
+                        callback.onError("Không tìm thấy album");
                         return;
                     }
-                    
-                    // Delete album-song relationship
-                    DocumentSnapshot doc = queryDocumentSnapshots.getDocuments().get(0);
-                    doc.getReference().delete()
-                            .addOnSuccessListener(aVoid -> {
-                                // Update song count in album
-                                DocumentReference albumRef = firestore.collection("albums").document(albumId);
-                                firestore.runTransaction(transaction -> {
-                                    DocumentSnapshot albumSnapshot = transaction.get(albumRef);
-                                    Album album = albumSnapshot.toObject(Album.class);
-                                    if (album != null) {
-                                        album.decrementSongCount();
-                                        transaction.update(albumRef, "songCount", album.getSongCount());
-                                        transaction.update(albumRef, "updatedDate", new Date());
-                                    }
-                                    return null;
-                                })
-                                .addOnSuccessListener(aVoid2 -> {
-                                    // Get updated album
-                                    getAlbum(albumId, callback);
-                                })
-                                .addOnFailureListener(e -> 
-                                    callback.onError("Lỗi khi cập nhật số lượng bài hát: " + e.getMessage())
-                                );
-                            })
-                            .addOnFailureListener(e -> 
-                                callback.onError("Lỗi khi xóa bài hát khỏi album: " + e.getMessage())
-                            );
+                    onLoaded.onLoaded(album, entries.getTask().getResult());
                 })
-                .addOnFailureListener(e -> 
+                .addOnFailureListener(e ->
                     callback.onError("Lỗi khi kiểm tra bài hát: " + e.getMessage())
                 );
     }
 
     /**
-     * Get all songs in an album
+     * Get all songs in an album, in the order they were added.
+     * Songs are built from the snapshot on each album_songs entry; only entries
+     * without one cost an extra read from "songs".
      * @param albumId Album ID
      * @param callback Callback for result
      */
@@ -309,15 +687,48 @@ public class AlbumRepository {
                     }
                     
                     List<String> songIds = new ArrayList<>();
+                    Map<String, Song> songsById = new HashMap<>();
+                    List<String> missingIds = new ArrayList<>();
                     for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
                         AlbumSong albumSong = doc.toObject(AlbumSong.class);
-                        if (albumSong != null) {
-                            songIds.add(albumSong.getSongId());
+                        if (albumSong == null || albumSong.getSongId() == null) {
+                            continue;
+                        }
+                        songIds.add(albumSong.getSongId());
+                        if (albumSong.hasSnapshot()) {
+                            songsById.put(albumSong.getSongId(), albumSong.toSong());
+                        } else {
+                            missingIds.add(albumSong.getSongId());
                         }
                     }
-                    
-                    // Get song details for each song ID
-                    getSongsByIds(songIds, callback);
+
+                    // Snapshot cũ (vd. previewUrl đã hết hạn) cũng được sửa ở nền; tối đa một lần mỗi MIN_INTERVAL_MS
+                    AlbumSongSnapshotReconciler.getInstance().schedule(albumId);
+                    if (missingIds.isEmpty()) {
+                        callback.onSuccess(inOrder(songIds, songsById));
+                        return;
+                    }
+
+                    // Chỉ đọc "songs" cho các mục cũ chưa có snapshot
+                    getSongsByIds(missingIds, new SongsCallback() {
+                        @Override
+                        public void onSuccess(List<Song> songs) {
+                            for (Song song : songs) {
+                                songsById.put(song.getSongId(), song);
+                            }
+                            callback.onSuccess(inOrder(songIds, songsById));
+                        }
+
+                        @Override
+                        public void onError(String errorMessage) {
+                            if (songsById.isEmpty()) {
+                                callback.onError(errorMessage);
+                            } else {
+                                // Vẫn hiển thị các bài đã có snapshot
+                                callback.onSuccess(inOrder(songIds, songsById));
+                            }
+                        }
+                    });
                 })
                 .addOnFailureListener(e -> 
                     callback.onError("Lỗi khi lấy danh sách bài hát: " + e.getMessage())
@@ -325,91 +736,212 @@ public class AlbumRepository {
     }
 
     /**
-     * Get songs by their IDs
+     * Get songs by their IDs, in the same order. Batches that still fail after retrying
+     * are left out; the call only fails when nothing could be loaded.
      * @param songIds List of song IDs
      * @param callback Callback for result
      */
     private void getSongsByIds(List<String> songIds, SongsCallback callback) {
-        if (songIds.isEmpty()) {
-            callback.onSuccess(new ArrayList<>());
-            return;
-        }
-        
-        // Firestore has a limit of 10 items in a whereIn query
-        // So we need to batch the requests if there are more than 10 songs
-        List<Song> allSongs = new ArrayList<>();
-        List<List<String>> batches = new ArrayList<>();
-        
-        // Split song IDs into batches of 10
-        for (int i = 0; i < songIds.size(); i += 10) {
-            batches.add(songIds.subList(i, Math.min(i + 10, songIds.size())));
-        }
-        
-        // Counter for completed batches
-        final int[] completedBatches = {0};
-        final boolean[] hasError = {false};
-        
-        // Process each batch
-        for (List<String> batch : batches) {
-            firestore.collection("songs")
-                    .whereIn("songId", batch)
-                    .get()
-                    .addOnSuccessListener(queryDocumentSnapshots -> {
-                        for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
-                            Song song = doc.toObject(Song.class);
-                            if (song != null) {
-                                allSongs.add(song);
-                            }
-                        }
-                        
-                        completedBatches[0]++;
-                        
-                        // If all batches are complete, return the results
-                        if (completedBatches[0] == batches.size() && !hasError[0]) {
-                            callback.onSuccess(allSongs);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        if (!hasError[0]) {
-                            hasError[0] = true;
-                            callback.onError("Lỗi khi lấy thông tin bài hát: " + e.getMessage());
-                        }
-                    });
+        songFetcher.fetch(songIds, result -> {
+            if (!result.isComplete()) {
+                Log.w(TAG, "Could not load " + result.getFailedKeys().size() + "/" + songIds.size()
+                        + " songs: " + result.getLastError().getMessage());
+                if (result.getValues().isEmpty()) {
+                    callback.onError("Lỗi khi lấy thông tin bài hát: " + result.getLastError().getMessage());
+                    return;
+                }
+            }
+            callback.onSuccess(result.getValues());
+        });
+    }
+
+    // Songs in album order, skipping ids whose details could not be found
+    private static List<Song> inOrder(List<String> songIds, Map<String, Song> songsById) {
+        List<Song> ordered = new ArrayList<>();
+        for (String songId : songIds) {
+            Song song = songsById.get(songId);
+            if (song != null) {
+                ordered.add(song);
+            }
         }
+        return ordered;
     }
 
     /**
-     * Upload a cover image for an album
-     * @param albumId Album ID
-     * @param imageBytes Image bytes
+     * Replace an album's cover with an image picked from the gallery or camera.
+     * The image is streamed and downscaled, never loaded whole into memory.
+     * @param album Album to update
+     * @param imageUri Content Uri of the image
      * @param callback Callback for result
      */
-    private void uploadCoverImage(String albumId, byte[] imageBytes, AlbumCallback callback) {
-        // Create a storage reference
-        StorageReference storageRef = storage.getReference();
-        StorageReference albumImageRef = storageRef.child("album_covers/" + albumId + ".jpg");
-        
-        // Upload the image
-        UploadTask uploadTask = albumImageRef.putBytes(imageBytes);
+    public void updateAlbumCover(Album album, Uri imageUri, AlbumCallback callback) {
+        uploadCoverImage(album.getAlbumId(),
+                () -> CoverImageRenditions.create(appContext, imageUri, album.getAlbumId()), new AlbumCallback() {
+            @Override
+            public void onSuccess(Album updatedAlbum) {
+                applyCover(album, updatedAlbum);
+                saveAlbum(album, callback);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                callback.onError("Lỗi khi tải lên ảnh bìa: " + errorMessage);
+            }
+        });
+    }
+
+    private interface RenditionSource {
+        List<CoverImageRenditions.Rendition> create() throws IOException;
+    }
+
+    private static void applyCover(Album album, Album uploaded) {
+        album.setCoverImageUrl(uploaded.getCoverImageUrl());
+        album.setCoverThumbnailUrl(uploaded.getCoverThumbnailUrl());
+        album.setCoverLargeUrl(uploaded.getCoverLargeUrl());
+    }
+
+    /**
+     * Upload the cover renditions for an album. Decoding and encoding run on a
+     * background thread; the callback is called on the main thread.
+     * @param albumId Album ID
+     * @param source Produces the rendition files
+     * @param callback Receives a temporary album holding the cover URLs
+     */
+    private void uploadCoverImage(String albumId, RenditionSource source, AlbumCallback callback) {
+        imageExecutor.execute(() -> {
+            List<CoverImageRenditions.Rendition> renditions;
+            List<String> fingerprints = new ArrayList<>();
+            try {
+                renditions = source.create();
+                for (CoverImageRenditions.Rendition rendition : renditions) {
+                    fingerprints.add(fingerprint(rendition.file));
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Cover processing failed for " + albumId + ": " + e.getMessage());
+                mainHandler.post(() -> callback.onError("Không xử lý được ảnh: " + e.getMessage()));
+                return;
+            }
+
+            mainHandler.post(() -> {
+                List<Task<Uri>> uploads = new ArrayList<>();
+                for (int i = 0; i < renditions.size(); i++) {
+                    uploads.add(uploadRendition(renditions.get(i).file, fingerprints.get(i)));
+                }
+                Tasks.whenAllSuccess(uploads).addOnCompleteListener(task -> {
+                    if (!task.isSuccessful() || task.getResult() == null) {
+                        callback.onError("Lỗi khi tải lên ảnh bìa");
+                        return;
+                    }
+                    // Create a temporary album with the image URLs
+                    Album tempAlbum = new Album();
+                    for (int i = 0; i < renditions.size(); i++) {
+                        String url = task.getResult().get(i).toString();
+                        if (renditions.get(i).size == CoverImageRenditions.Size.THUMBNAIL) {
+                            tempAlbum.setCoverThumbnailUrl(url);
+                        } else {
+                            tempAlbum.setCoverLargeUrl(url);
+                            tempAlbum.setCoverImageUrl(url);
+                        }
+                    }
+                    callback.onSuccess(tempAlbum);
+                });
+            });
+        });
+    }
+
+    /**
+     * Upload one file with putFile, resuming the previous upload session (saved on every
+     * progress event, so it survives process death) instead of starting over. Sessions are
+     * keyed by the storage path, which is the same for every cover of an album, so a
+     * session is only resumed for a file with the same fingerprint.
+     * @param file Rendition file, deleted once uploaded
+     * @param fingerprint {@link #fingerprint(File)} of the file
+     * @return Task with the download URL
+     */
+    private Task<Uri> uploadRendition(File file, String fingerprint) {
+        TaskCompletionSource<Uri> result = new TaskCompletionSource<>();
+        StorageReference ref = storage.getReference().child("album_covers/" + file.getName());
+        startUpload(ref, file, fingerprint, 1, result);
+        return result.getTask();
+    }
+
+    private void startUpload(StorageReference ref, File file, String fingerprint, int attempt,
+                             TaskCompletionSource<Uri> result) {
+        String sessionKey = ref.getPath();
+        String fingerprintKey = sessionKey + FINGERPRINT_SUFFIX;
+        String savedSession = uploadSessions.getString(sessionKey, null);
+        if (savedSession != null && !fingerprint.equals(uploadSessions.getString(fingerprintKey, null))) {
+            // Left over from another cover for the same path; resuming it would mix two files
+            Log.d(TAG, "Dropping upload session of a different file for " + sessionKey);
+            uploadSessions.edit().remove(sessionKey).remove(fingerprintKey).apply();
+            savedSession = null;
+        }
+        String resumedSession = savedSession;
+        StorageMetadata metadata = new StorageMetadata.Builder()
+                .setContentType(CoverImageRenditions.CONTENT_TYPE)
+                .setCacheControl("public, max-age=31536000")
+                .build();
+
+        UploadTask uploadTask = savedSession != null
+                ? ref.putFile(Uri.fromFile(file), metadata, Uri.parse(savedSession))
+                : ref.putFile(Uri.fromFile(file), metadata);
+        uploadTask.addOnProgressListener(snapshot -> {
+            Uri session = snapshot.getUploadSessionUri();
+            if (session != null && !session.toString().equals(uploadSessions.getString(sessionKey, null))) {
+                uploadSessions.edit()
+                        .putString(sessionKey, session.toString())
+                        .putString(fingerprintKey, fingerprint)
+                        .apply();
+            }
+        });
         uploadTask.continueWithTask(task -> {
             if (!task.isSuccessful() && task.getException() != null) {
                 throw task.getException();
             }
-            
-            // Get the download URL
-            return albumImageRef.getDownloadUrl();
-        }).addOnCompleteListener(task -> {
-            if (task.isSuccessful() && task.getResult() != null) {
-                // Create a temporary album with the image URL
-                Album tempAlbum = new Album();
-                tempAlbum.setCoverImageUrl(task.getResult().toString());
-                callback.onSuccess(tempAlbum);
+            return ref.getDownloadUrl();
+        }).addOnSuccessListener(uri -> {
+            uploadSessions.edit().remove(sessionKey).remove(fingerprintKey).apply();
+            file.delete();
+            result.setResult(uri);
+        }).addOnFailureListener(e -> {
+            Log.w(TAG, "Upload of " + sessionKey + " failed (attempt " + attempt + "): " + e.getMessage());
+            if (resumedSession != null) {
+                // The saved session may be expired; start fresh next time
+                uploadSessions.edit().remove(sessionKey).remove(fingerprintKey).apply();
+            }
+            if (attempt < MAX_UPLOAD_ATTEMPTS) {
+                startUpload(ref, file, fingerprint, attempt + 1, result);
             } else {
-                callback.onError("Lỗi khi tải lên ảnh bìa");
+                result.setException(e);
             }
         });
     }
 
+    /**
+     * Size and SHA-256 of a file's content. Renditions are re-encoded on every attempt, so
+     * the modification time would never match; the same picture gives the same bytes.
+     */
+    private static String fingerprint(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format(Locale.US, "%02x", b));
+        }
+        return file.length() + ":" + hex;
+    }
+
     /**
      * Save an album to Firestore
      * @param album Album to save
@@ -0,0 +1,150 @@
+package com.example.beomusic.repositories;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.beomusic.models.AlbumSong;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Background job that keeps the song snapshots embedded in album_songs in line with
+ * the "songs" collection.
+ *
+ * Readers schedule a run every time they load an album, so stale snapshots are repaired
+ * as well as missing ones; each album is reconciled at most once per {@link #MIN_INTERVAL_MS}. Entries whose song document no
+ * longer exists are left alone so the album still shows the last known details.
+ */
+public class AlbumSongSnapshotReconciler {
+    private static final String TAG = "SnapshotReconciler";
+
+    private static final long MIN_INTERVAL_MS = 10 * 60 * 1000;
+    private static final int WHERE_IN_LIMIT = 30;
+    // Firestore rejects batches with more than 500 writes
+    private static final int MAX_BATCH_WRITES = 500;
+
+    private static final AlbumSongSnapshotReconciler instance = new AlbumSongSnapshotReconciler();
+
+    private final FirebaseFirestore firestore;
+    private final Executor executor = Executors.newSingleThreadExecutor();
+    private final Map<String, Long> lastRun = new HashMap<>();
+
+    public static AlbumSongSnapshotReconciler getInstance() {
+        return instance;
+    }
+
+    private AlbumSongSnapshotReconciler() {
+        firestore = FirebaseFirestore.getInstance();
+    }
+
+    /**
+     * Queue a reconciliation of one album unless it ran recently
+     * @param albumId Album (or favorites album) id
+     */
+    public void schedule(String albumId) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (lastRun) {
+            Long last = lastRun.get(albumId);
+            if (last != null && now - last < MIN_INTERVAL_MS) {
+                return;
+            }
+            lastRun.put(albumId, now);
+        }
+        executor.execute(() -> {
+            try {
+                reconcile(albumId);
+            } catch (Exception e) {
+                Log.w(TAG, "Reconcile " + albumId + " failed: " + e.getMessage());
+                synchronized (lastRun) {
+                    lastRun.remove(albumId);
+                }
+            }
+        });
+    }
+
+    private void reconcile(String albumId) throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        QuerySnapshot entries = Tasks.await(firestore.collection("album_songs")
+                .whereEqualTo("albumId", albumId)
+                .get());
+
+        List<String> songIds = new ArrayList<>();
+        for (DocumentSnapshot doc : entries.getDocuments()) {
+            String songId = doc.getString("songId");
+            if (songId != null && !songIds.contains(songId)) {
+                songIds.add(songId);
+            }
+        }
+
+        Map<String, DocumentSnapshot> songs = new HashMap<>();
+        for (int i = 0; i < songIds.size(); i += WHERE_IN_LIMIT) {
+            QuerySnapshot chunk = Tasks.await(firestore.collection("songs")
+                    .whereIn("songId", songIds.subList(i, Math.min(i + WHERE_IN_LIMIT, songIds.size())))
+                    .get());
+            for (DocumentSnapshot doc : chunk.getDocuments()) {
+                songs.put(doc.getString("songId"), doc);
+            }
+        }
+
+        WriteBatch batch = firestore.batch();
+        int pending = 0;
+        int repaired = 0;
+        for (DocumentSnapshot entry : entries.getDocuments()) {
+            DocumentSnapshot song = songs.get(entry.getString("songId"));
+            if (song == null) {
+                continue;
+            }
+            Map<String, Object> fields = snapshotOf(song);
+            if (matches(entry, fields)) {
+                continue;
+            }
+            batch.update(entry.getReference(), fields);
+            repaired++;
+            if (++pending == MAX_BATCH_WRITES) {
+                Tasks.await(batch.commit());
+                batch = firestore.batch();
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            Tasks.await(batch.commit());
+        }
+
+        Log.d(TAG, "Album " + albumId + ": repaired " + repaired + "/" + entries.size()
+                + " snapshots in " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    private static Map<String, Object> snapshotOf(DocumentSnapshot song) {
+        // Songs saved from favorites use previewUrl, older ones were stored from the Song model
+        String previewUrl = song.getString("previewUrl");
+        if (previewUrl == null) {
+            previewUrl = song.getString("filePath");
+        }
+        Long duration = song.getLong("duration");
+        return AlbumSong.snapshotFields(song.getString("title"), song.getString("artist"),
+                song.getString("thumbnailUrl"), previewUrl, duration != null ? duration.intValue() : 0);
+    }
+
+    private static boolean matches(DocumentSnapshot entry, Map<String, Object> fields) {
+        if (entry.get("snapshotDate") == null) {
+            return false;
+        }
+        Long duration = entry.getLong("duration");
+        return Objects.equals(entry.getString("title"), fields.get("title"))
+                && Objects.equals(entry.getString("artist"), fields.get("artist"))
+                && Objects.equals(entry.getString("thumbnailUrl"), fields.get("thumbnailUrl"))
+                && Objects.equals(entry.getString("previewUrl"), fields.get("previewUrl"))
+                && (duration != null ? duration.intValue() : 0) == (int) fields.get("duration");
+    }
+}
@@ -0,0 +1,470 @@
+package com.example.beomusic.repositories;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.util.Log;
+
+import com.example.beomusic.API.HttpClient;
+import com.example.beomusic.models.UserSettings;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache for audio previews, filled block by block with HTTP range requests.
+ *
+ * Each track is stored as a sparse data file plus a small index of which 64 KB blocks
+ * are present, so a track that was only partly played resumes from the cached part and
+ * only the missing ranges are fetched. Tracks are evicted least-recently-played first
+ * once the total size exceeds {@link UserSettings#getCacheSize()}.
+ *
+ * Blocking: every method that takes an {@link Entry} may hit disk or network and must
+ * not be called on the main thread (MediaPlayer calls its data source on its own thread).
+ */
+public class AudioCache {
+    private static final String TAG = "AudioCache";
+    private static final String DIR_NAME = "audio_cache";
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    private static volatile AudioCache instance;
+
+    private final File directory;
+    private final ConnectivityManager connectivity;
+
+    // Least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean loaded = false;
+    private long totalBytes = 0;
+
+    private volatile boolean enabled;
+    private volatile boolean wifiOnly;
+    private volatile long maxBytes;
+
+    private final AtomicLong blockHits = new AtomicLong();
+    private final AtomicLong blockMisses = new AtomicLong();
+    private final AtomicLong networkBytes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * One cached track. Opened by a data source and closed when the player is released.
+     */
+    public static class Entry {
+        final String name;
+        final BitSet blocks = new BitSet();
+        long length = -1;
+        long storedBytes = 0;
+        int openCount = 0;
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    public static AudioCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AudioCache.class) {
+                if (instance == null) {
+                    Context app = context.getApplicationContext();
+                    instance = new AudioCache(new File(app.getCacheDir(), DIR_NAME),
+                            (ConnectivityManager) app.getSystemService(Context.CONNECTIVITY_SERVICE));
+                }
+            }
+        }
+        return instance;
+    }
+
+    private AudioCache(File directory, ConnectivityManager connectivity) {
+        this.directory = directory;
+        this.connectivity = connectivity;
+        // No settings are persisted yet, start from the defaults
+        applySettings(new UserSettings(null));
+    }
+
+    /**
+     * Apply the user's cache settings. Shrinking the size evicts right away.
+     * @param settings User settings
+     */
+    public void applySettings(UserSettings settings) {
+        enabled = settings.isCacheEnabled();
+        wifiOnly = settings.isDownloadOverWifiOnly();
+        maxBytes = settings.getCacheSize() * 1024L * 1024L;
+        synchronized (this) {
+            if (loaded) {
+                evict(null);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Open the entry for a URL, creating it if needed. The first call reads the index of
+     * every cached track, so this blocks like the other entry methods.
+     * @param url Preview URL
+     * @return Entry to read from; must be passed to {@link #close(Entry)}
+     */
+    public Entry open(String url) {
+        String name = nameFor(keyFor(url));
+        synchronized (this) {
+            ensureLoaded();
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                entry = new Entry(name);
+                entries.put(name, entry);
+            }
+            entry.openCount++;
+            return entry;
+        }
+    }
+
+    public void close(Entry entry) {
+        synchronized (this) {
+            entry.openCount--;
+            if (entry.storedBytes == 0 && entry.openCount == 0) {
+                entries.remove(entry.name);
+            }
+        }
+        Log.d(TAG, "Stats: " + getStats());
+    }
+
+    /**
+     * Total size of the track, known once any block has been fetched
+     * @param entry Open entry
+     * @return Size in bytes, or -1 if not known yet
+     */
+    public long length(Entry entry) {
+        synchronized (entry) {
+            return entry.length;
+        }
+    }
+
+    /**
+     * Read one block from disk, or fetch it with a range request and store it
+     * @param entry Open entry
+     * @param url Preview URL
+     * @param block Block index
+     * @return Block contents; shorter than {@link #BLOCK_SIZE} for the last block, empty past the end
+     */
+    public byte[] readBlock(Entry entry, String url, long block) throws IOException {
+        synchronized (entry) {
+            if (entry.blocks.get((int) block)) {
+                byte[] cached = readFromDisk(entry, block);
+                if (cached != null) {
+                    blockHits.incrementAndGet();
+                    return cached;
+                }
+            }
+            blockMisses.incrementAndGet();
+            return fetch(entry, url, block);
+        }
+    }
+
+    public String getStats() {
+        long hits = blockHits.get();
+        long total = hits + blockMisses.get();
+        synchronized (this) {
+            return String.format(Locale.US,
+                    "blockHits=%d, blockMisses=%d, hitRatio=%.2f, networkBytes=%d, cachedBytes=%d, tracks=%d, evictions=%d",
+                    hits, blockMisses.get(), total == 0 ? 0f : (float) hits / total, networkBytes.get(),
+                    totalBytes, entries.size(), evictions.get());
+        }
+    }
+
+    public long getBlockHits() { return blockHits.get(); }
+    public long getBlockMisses() { return blockMisses.get(); }
+
+    public float getHitRatio() {
+        long hits = blockHits.get();
+        long total = hits + blockMisses.get();
+        return total == 0 ? 0f : (float) hits / total;
+    }
+
+    /**
+     * Delete every cached track that is not currently playing
+     */
+    public synchronized void clear() {
+        ensureLoaded();
+        long saved = maxBytes;
+        maxBytes = 0;
+        evict(null);
+        maxBytes = saved;
+    }
+
+    // === Network ===
+
+    private byte[] fetch(Entry entry, String url, long block) throws IOException {
+        long start = block * BLOCK_SIZE;
+        if (entry.length >= 0 && start >= entry.length) {
+            return new byte[0];
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        // Compressed bodies would break byte ranges
+        headers.put("Accept-Encoding", "identity");
+        headers.put("Range", "bytes=" + start + "-" + (start + BLOCK_SIZE - 1));
+        boolean persist = shouldPersist();
+        try {
+            // Shared client: the connection goes back to the keep-alive pool for the next block
+            return HttpClient.getInstance().execute(url, headers, (status, connection, body) -> {
+                if (status == 416) {
+                    return new byte[0];
+                }
+                if (status != HttpURLConnection.HTTP_PARTIAL && status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP " + status + " khi tải audio");
+                }
+
+                if (status == HttpURLConnection.HTTP_PARTIAL) {
+                    long total = parseTotal(connection.getHeaderField("Content-Range"));
+                    if (total >= 0) {
+                        entry.length = total;
+                    }
+                    byte[] data = readFully(body, BLOCK_SIZE);
+                    networkBytes.addAndGet(data.length);
+                    if (persist) {
+                        store(entry, block, data);
+                    }
+                    return data;
+                }
+
+                // Range not supported: the whole file comes back, keep all of it
+                long contentLength = connection.getContentLengthLong();
+                if (contentLength >= 0) {
+                    entry.length = contentLength;
+                }
+                byte[] requested = new byte[0];
+                long index = 0;
+                long received = 0;
+                while (true) {
+                    byte[] data = readFully(body, BLOCK_SIZE);
+                    if (data.length == 0) {
+                        break;
+                    }
+                    received += data.length;
+                    networkBytes.addAndGet(data.length);
+                    if (persist) {
+                        store(entry, index, data);
+                    }
+                    if (index == block) {
+                        requested = data;
+                    }
+                    index++;
+                    if (data.length < BLOCK_SIZE) {
+                        break;
+                    }
+                }
+                if (entry.length < 0) {
+                    entry.length = received;
+                }
+                return requested;
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private boolean shouldPersist() {
+        if (!enabled) {
+            return false;
+        }
+        // Over mobile data with "Wi-Fi only" on, stream without filling the cache
+        return !(wifiOnly && connectivity != null && connectivity.isActiveNetworkMetered());
+    }
+
+    private static long parseTotal(String contentRange) {
+        // "bytes 0-65535/812345"
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || contentRange.endsWith("*")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int max) throws IOException {
+        byte[] buffer = new byte[max];
+        int read = 0;
+        while (read < max) {
+            int n = in.read(buffer, read, max - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read == max ? buffer : Arrays.copyOf(buffer, read);
+    }
+
+    // === Disk ===
+
+    private byte[] readFromDisk(Entry entry, long block) {
+        File data = dataFile(entry);
+        try (RandomAccessFile file = new RandomAccessFile(data, "r")) {
+            long start = block * BLOCK_SIZE;
+            int size = (int) Math.min(BLOCK_SIZE, file.length() - start);
+            if (entry.length >= 0) {
+                size = (int) Math.min(size, entry.length - start);
+            }
+            if (size <= 0) {
+                return null;
+            }
+            byte[] buffer = new byte[size];
+            file.seek(start);
+            file.readFully(buffer);
+            return buffer;
+        } catch (IOException e) {
+            Log.w(TAG, "readFromDisk: " + e.getMessage());
+            entry.blocks.clear((int) block);
+            return null;
+        }
+    }
+
+    private void store(Entry entry, long block, byte[] data) {
+        if (data.length == 0 || entry.blocks.get((int) block)) {
+            return;
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(dataFile(entry), "rw")) {
+            file.seek(block * BLOCK_SIZE);
+            file.write(data);
+            entry.blocks.set((int) block);
+            writeIndex(entry);
+        } catch (IOException e) {
+            Log.w(TAG, "store: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            entry.storedBytes += data.length;
+            totalBytes += data.length;
+            // Touch for LRU order
+            entries.get(entry.name);
+            evict(entry);
+        }
+    }
+
+    private void writeIndex(Entry entry) throws IOException {
+        File index = indexFile(entry);
+        File tmp = new File(directory, index.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeLong(entry.length);
+            byte[] bits = entry.blocks.toByteArray();
+            out.writeInt(bits.length);
+            out.write(bits);
+        }
+        if (!tmp.renameTo(index)) {
+            tmp.delete();
+        }
+    }
+
+    // Rebuild the LRU order from file timestamps; called once, lazily, from the first open()
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".idx"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File index : files) {
+            String name = index.getName().substring(0, index.getName().length() - 4);
+            Entry entry = new Entry(name);
+            try (DataInputStream in = new DataInputStream(new FileInputStream(index))) {
+                entry.length = in.readLong();
+                byte[] bits = new byte[in.readInt()];
+                in.readFully(bits);
+                entry.blocks.or(BitSet.valueOf(bits));
+            } catch (IOException e) {
+                index.delete();
+                dataFile(entry).delete();
+                continue;
+            }
+            entry.storedBytes = dataFile(entry).length();
+            totalBytes += entry.storedBytes;
+            entries.put(name, entry);
+        }
+        evict(null);
+    }
+
+    // Caller holds the lock. Tracks that are open right now are never evicted.
+    private void evict(Entry keep) {
+        List<Entry> victims = new ArrayList<>();
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        long size = totalBytes;
+        while (size > maxBytes && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry == keep || entry.openCount > 0 || entry.storedBytes == 0) {
+                continue;
+            }
+            victims.add(entry);
+            size -= entry.storedBytes;
+            it.remove();
+        }
+        for (Entry entry : victims) {
+            dataFile(entry).delete();
+            indexFile(entry).delete();
+            totalBytes -= entry.storedBytes;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private File dataFile(Entry entry) {
+        return new File(directory, entry.name + ".data");
+    }
+
+    private File indexFile(Entry entry) {
+        return new File(directory, entry.name + ".idx");
+    }
+
+    // Deezer preview URLs carry a short-lived token in the query string; the path is stable
+    private static String keyFor(String url) {
+        int query = url.indexOf('?');
+        return query >= 0 ? url.substring(0, query) : url;
+    }
+
+    private static String nameFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format(Locale.US, "%02x", b));
+            }
+            return name.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
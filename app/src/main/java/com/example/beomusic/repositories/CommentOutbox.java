@@ -0,0 +1,284 @@
+package com.example.beomusic.repositories;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.beomusic.models.Comment;
+import com.example.beomusic.models.SongCommentStats;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Query;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Comments that were shown to the user but not yet confirmed by the server.
+ *
+ * Every posted comment is stored here (SharedPreferences, as JSON) before it is written,
+ * and removed once the write succeeds or is rejected. The document id is chosen on the
+ * client, so sending an entry again after a crash or restart finds the same document
+ * instead of creating a duplicate. Entries left over are sent again on the next
+ * {@link #flush()} and whenever the device gets a network connection.
+ *
+ * Must be used on the main thread; listeners are called there too.
+ */
+public class CommentOutbox {
+    private static final String TAG = "CommentOutbox";
+    private static final String PREF_NAME = "BeoMusicComments";
+    private static final String KEY_OUTBOX = "outbox";
+    private static final String COMMENTS_COLLECTION = "comments";
+    private static final String STATS_COLLECTION = "song_comment_stats";
+
+    public interface Listener {
+        /**
+         * @param comment The comment as written, no longer pending
+         */
+        void onCommentSent(Comment comment);
+
+        /**
+         * The server refused the comment; it has been dropped from the outbox
+         * @param comment The pending comment to roll back
+         */
+        void onCommentFailed(Comment comment, String errorMessage);
+    }
+
+    private static CommentOutbox instance;
+
+    private final SharedPreferences preferences;
+    private final FirebaseFirestore firestore;
+    private final FirebaseAuth firebaseAuth;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new ArrayList<>();
+
+    // Keyed by comment id, in posting order
+    private final Map<String, Comment> entries = new LinkedHashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+
+    public static synchronized CommentOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new CommentOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CommentOutbox(Context context) {
+        preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        firestore = FirebaseFirestore.getInstance();
+        firebaseAuth = FirebaseAuth.getInstance();
+        readEntries();
+
+        ConnectivityManager connectivity =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity != null) {
+            connectivity.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(@NonNull Network network) {
+                    mainHandler.post(CommentOutbox.this::flush);
+                }
+            });
+        }
+    }
+
+    /**
+     * Store the comment and start writing it
+     * @param comment Comment with its client-side id, marked pending
+     */
+    public void enqueue(Comment comment) {
+        entries.put(comment.getCommentId(), comment);
+        writeEntries();
+        send(comment);
+    }
+
+    /**
+     * @param songId The ID of the song
+     * @return The signed-in user's unconfirmed comments on that song, oldest first
+     */
+    public List<Comment> getPending(String songId) {
+        FirebaseUser currentUser = firebaseAuth.getCurrentUser();
+        List<Comment> pending = new ArrayList<>();
+        if (currentUser == null) {
+            return pending;
+        }
+        for (Comment comment : entries.values()) {
+            if (songId.equals(comment.getSongId()) && currentUser.getUid().equals(comment.getUserId())) {
+                pending.add(comment);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Send every stored comment of the signed-in user that isn't being sent already
+     */
+    public void flush() {
+        FirebaseUser currentUser = firebaseAuth.getCurrentUser();
+        if (currentUser == null || entries.isEmpty()) {
+            return;
+        }
+        for (Comment comment : new ArrayList<>(entries.values())) {
+            if (currentUser.getUid().equals(comment.getUserId())) {
+                send(comment);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void send(Comment comment) {
+        String commentId = comment.getCommentId();
+        if (!inFlight.add(commentId)) {
+            return;
+        }
+        Log.d(TAG, "send: Writing comment ID: " + commentId);
+
+        // Timestamp stays null so @ServerTimestamp fills it in
+        Comment toWrite = new Comment(null, comment.getUserId(), comment.getSongId(), comment.getContent(),
+                comment.getUsername(), null, comment.getUserPhotoUrl());
+        DocumentReference commentRef = firestore.collection(COMMENTS_COLLECTION).document(commentId);
+        DocumentReference statsRef = firestore.collection(STATS_COLLECTION).document(comment.getSongId());
+        // Stats are only started at 1 for a song with no comments yet. A song whose comments
+        // predate song_comment_stats is left without stats (shown as 0) for
+        // backfill-comment-stats.js, instead of getting a count that ignores them.
+        Query existingComments = firestore.collection(COMMENTS_COLLECTION)
+                .whereEqualTo("songId", comment.getSongId())
+                .limit(1);
+        // Comment and song stats change together. A resend after a lost acknowledgement finds
+        // the comment already there and changes nothing, so the count isn't bumped twice.
+        existingComments.get()
+                .onSuccessTask(existing -> firestore.runTransaction(transaction -> {
+                    if (transaction.get(commentRef).exists()) {
+                        return null;
+                    }
+                    DocumentSnapshot statsDoc = transaction.get(statsRef);
+                    SongCommentStats stats = statsDoc.exists() ? statsDoc.toObject(SongCommentStats.class) : null;
+                    if (stats == null && existing.isEmpty()) {
+                        stats = new SongCommentStats(comment.getSongId());
+                    }
+                    transaction.set(commentRef, toWrite);
+                    if (stats != null) {
+                        stats.applyAdded(comment, new Date());
+                        transaction.set(statsRef, stats);
+                    }
+                    return null;
+                }))
+                .addOnSuccessListener(result -> {
+                    inFlight.remove(commentId);
+                    if (entries.remove(commentId) == null) {
+                        return;
+                    }
+                    writeEntries();
+                    Log.d(TAG, "send: Comment saved with ID: " + commentId);
+
+                    Comment sent = new Comment(commentId, comment.getUserId(), comment.getSongId(),
+                            comment.getContent(), comment.getUsername(), null, comment.getUserPhotoUrl());
+                    for (Listener listener : new ArrayList<>(listeners)) {
+                        listener.onCommentSent(sent);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    inFlight.remove(commentId);
+                    if (isTransient(e)) {
+                        // Kept for the next flush
+                        Log.w(TAG, "send: Will retry comment ID: " + commentId + ": " + e.getMessage());
+                        return;
+                    }
+                    Log.e(TAG, "send: Comment rejected, ID: " + commentId, e);
+                    if (entries.remove(commentId) == null) {
+                        return;
+                    }
+                    writeEntries();
+                    for (Listener listener : new ArrayList<>(listeners)) {
+                        listener.onCommentFailed(comment, "Lỗi khi thêm bình luận: " + e.getMessage());
+                    }
+                });
+    }
+
+    private static boolean isTransient(Exception e) {
+        if (!(e instanceof FirebaseFirestoreException)) {
+            return false;
+        }
+        switch (((FirebaseFirestoreException) e).getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case ABORTED:
+            case RESOURCE_EXHAUSTED:
+            case INTERNAL:
+            case UNAUTHENTICATED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void readEntries() {
+        String json = preferences.getString(KEY_OUTBOX, null);
+        if (json == null) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                Comment comment = new Comment(o.getString("commentId"), o.getString("userId"),
+                        o.getString("songId"), o.getString("content"), o.optString("username", null),
+                        null, o.optString("userPhotoUrl", null));
+                comment.setPending(true);
+                entries.put(comment.getCommentId(), comment);
+            }
+            Log.d(TAG, "readEntries: " + entries.size() + " unsent comments");
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping unreadable outbox: " + e.getMessage());
+            preferences.edit().remove(KEY_OUTBOX).apply();
+        }
+    }
+
+    private void writeEntries() {
+        if (entries.isEmpty()) {
+            preferences.edit().remove(KEY_OUTBOX).apply();
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray();
+            for (Comment comment : entries.values()) {
+                JSONObject o = new JSONObject();
+                o.put("commentId", comment.getCommentId());
+                o.put("userId", comment.getUserId());
+                o.put("songId", comment.getSongId());
+                o.put("content", comment.getContent());
+                o.put("username", comment.getUsername());
+                o.put("userPhotoUrl", comment.getUserPhotoUrl());
+                array.put(o);
+            }
+            preferences.edit().putString(KEY_OUTBOX, array.toString()).apply();
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not store outbox: " + e.getMessage());
+        }
+    }
+}
@@ -1,18 +1,28 @@
 package com.example.beomusic.repositories;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.example.beomusic.models.Comment;
+import com.example.beomusic.models.SongCommentStats;
+import com.example.beomusic.utils.BatchFetcher;
+import com.example.beomusic.utils.CursorPager;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -22,9 +32,21 @@ public class CommentRepository {
     
     private static final String TAG = "CommentRepository";
     private static final String COMMENTS_COLLECTION = "comments";
+    private static final String STATS_COLLECTION = "song_comment_stats";
+    private static final int WHERE_IN_LIMIT = 30;
+    private static final int MAX_PARALLEL_QUERIES = 4;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String PROFILE_PREF_NAME = "BeoMusicComments";
+    private static final String KEY_USERNAME = "profile_username_";
+    private static final String KEY_PHOTO_URL = "profile_photo_url_";
+    private static final String KEY_PROFILE_TIME = "profile_time_";
+    private static final long PROFILE_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
     private final FirebaseFirestore firestore;
     private final FirebaseAuth firebaseAuth;
     private final Context context;
+    // Author name and photo used for new comments, per user id
+    private final SharedPreferences profiles;
+    private final BatchFetcher<String, SongCommentStats> statsFetcher;
     
     public interface CommentCallback {
         void onSuccess(List<Comment> comments);
@@ -35,16 +57,49 @@ public class CommentRepository {
         void onSuccess(Comment comment);
         void onError(String errorMessage);
     }
+
+    public interface CommentStatsCallback {
+        void onSuccess(List<SongCommentStats> stats);
+        void onError(String errorMessage);
+    }
+
+    /**
+     * Changes to the newest page of a song's comments, one call per changed document
+     */
+    public interface CommentChangeListener {
+        // New comment, or an older one that moved into the newest page
+        void onCommentAdded(Comment comment);
+        void onCommentModified(Comment comment);
+        // Comment deleted; comments that just scrolled out of the newest page are not reported
+        void onCommentRemoved(String commentId);
+        void onError(String errorMessage);
+    }
     
     public CommentRepository(Context context) {
         this.context = context;
         this.firestore = FirebaseFirestore.getInstance();
         this.firebaseAuth = FirebaseAuth.getInstance();
+        this.profiles = context.getApplicationContext().getSharedPreferences(PROFILE_PREF_NAME, Context.MODE_PRIVATE);
+        this.statsFetcher = new BatchFetcher<>((songIds, batchCallback) -> firestore.collection(STATS_COLLECTION)
+                .whereIn(FieldPath.documentId(), songIds)
+                .get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    List<SongCommentStats> stats = new ArrayList<>();
+                    for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
+                        SongCommentStats songStats = doc.toObject(SongCommentStats.class);
+                        if (songStats != null) {
+                            stats.add(songStats);
+                        }
+                    }
+                    batchCallback.onSuccess(stats);
+                })
+                .addOnFailureListener(batchCallback::onError),
+                SongCommentStats::getSongId, WHERE_IN_LIMIT, MAX_PARALLEL_QUERIES, MAX_ATTEMPTS);
         Log.d(TAG, "CommentRepository initialized");
     }
     
     /**
-     * Get comments for a specific song
+     * Get the newest comments for a specific song
      * @param songId The ID of the song
      * @param limit Maximum number of comments to fetch
      * @param callback Callback for result
@@ -52,44 +107,13 @@ public class CommentRepository {
     public void getComments(String songId, int limit, CommentCallback callback) {
         Log.d(TAG, "getComments: Fetching comments for song ID: " + songId + ", limit: " + limit);
         
-        // Using only whereEqualTo without orderBy to avoid requiring a composite index
-        firestore.collection(COMMENTS_COLLECTION)
-                .whereEqualTo("songId", songId)
+        // Sorted and limited on the server (index: songId ASC, timestamp DESC in firestore.indexes.json)
+        commentsQuery(songId)
+                .limit(limit)
                 .get()
                 .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Comment> comments = new ArrayList<>();
-                    Log.d(TAG, "getComments: Query returned " + queryDocumentSnapshots.size() + " documents");
-                    
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Log.d(TAG, "getComments: Processing document ID: " + document.getId());
-                        try {
-                            Comment comment = document.toObject(Comment.class);
-                            if (comment != null) {
-                                comments.add(comment);
-                                Log.d(TAG, "getComments: Added comment with ID: " + comment.getCommentId() + 
-                                          ", by user: " + comment.getUserId() + 
-                                          ", content: " + (comment.getContent() != null ? comment.getContent().substring(0, Math.min(20, comment.getContent().length())) + "..." : "null"));
-                            } else {
-                                Log.w(TAG, "getComments: Failed to convert document to Comment: " + document.getId());
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "getComments: Error converting document to Comment: " + document.getId(), e);
-                        }
-                    }
-                    
-                    // Sort comments by timestamp locally
-                    comments.sort((c1, c2) -> {
-                        if (c1.getTimestamp() == null) return 1;
-                        if (c2.getTimestamp() == null) return -1;
-                        return c2.getTimestamp().compareTo(c1.getTimestamp()); // Descending order
-                    });
-                    
-                    // Apply limit after sorting
-                    if (comments.size() > limit) {
-                        comments = comments.subList(0, limit);
-                    }
-                    
-                    Log.d(TAG, "getComments: Successfully converted " + comments.size() + " comments");
+                    List<Comment> comments = toComments(queryDocumentSnapshots.getDocuments());
+                    Log.d(TAG, "getComments: Loaded " + comments.size() + " comments");
                     callback.onSuccess(comments);
                 })
                 .addOnFailureListener(e -> {
@@ -110,66 +134,126 @@ public class CommentRepository {
               ", after timestamp: " + lastTimestamp + 
               ", limit: " + limit);
         
-        // Using only whereEqualTo without orderBy to avoid requiring a composite index
-        firestore.collection(COMMENTS_COLLECTION)
-                .whereEqualTo("songId", songId)
+        commentsQuery(songId)
+                .startAfter(lastTimestamp)
+                .limit(limit)
                 .get()
                 .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<Comment> allComments = new ArrayList<>();
-                    List<Comment> filteredComments = new ArrayList<>();
-                    Log.d(TAG, "getMoreComments: Query returned " + queryDocumentSnapshots.size() + " documents");
-                    
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        Log.d(TAG, "getMoreComments: Processing document ID: " + document.getId());
-                        try {
-                            Comment comment = document.toObject(Comment.class);
-                            if (comment != null) {
-                                allComments.add(comment);
-                            } else {
-                                Log.w(TAG, "getMoreComments: Failed to convert document to Comment: " + document.getId());
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "getMoreComments: Error converting document to Comment: " + document.getId(), e);
-                        }
-                    }
-                    
-                    // Sort comments by timestamp
-                    allComments.sort((c1, c2) -> {
-                        if (c1.getTimestamp() == null) return 1;
-                        if (c2.getTimestamp() == null) return -1;
-                        return c2.getTimestamp().compareTo(c1.getTimestamp()); // Descending order
-                    });
-                    
-                    // Find the index of the last comment
-                    int startIndex = -1;
-                    for (int i = 0; i < allComments.size(); i++) {
-                        Comment comment = allComments.get(i);
-                        if (comment.getTimestamp() != null && comment.getTimestamp().compareTo(lastTimestamp) < 0) {
-                            startIndex = i;
-                            break;
-                        }
-                    }
-                    
-                    // Get next batch of comments
-                    if (startIndex != -1) {
-                        int endIndex = Math.min(startIndex + limit, allComments.size());
-                        filteredComments = allComments.subList(startIndex, endIndex);
-                    }
-                    
-                    Log.d(TAG, "getMoreComments: Filtered to " + filteredComments.size() + " comments");
-                    callback.onSuccess(filteredComments);
+                    List<Comment> comments = toComments(queryDocumentSnapshots.getDocuments());
+                    Log.d(TAG, "getMoreComments: Loaded " + comments.size() + " comments");
+                    callback.onSuccess(comments);
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "getMoreComments: Error fetching more comments for song ID: " + songId, e);
                     callback.onError("Lỗi khi tải thêm bình luận: " + e.getMessage());
                 });
     }
+
+    /**
+     * Page source for {@link CursorPager}: newest first, continuing after the last document
+     * of the previous page (so comments sharing a timestamp are neither skipped nor repeated)
+     * @param songId The ID of the song
+     */
+    public CursorPager.PageSource<Comment, DocumentSnapshot> commentPages(String songId) {
+        return (after, limit, callback) -> {
+            Query query = commentsQuery(songId);
+            if (after != null) {
+                query = query.startAfter(after);
+            }
+            query.limit(limit)
+                    .get()
+                    .addOnSuccessListener(queryDocumentSnapshots -> {
+                        List<DocumentSnapshot> docs = queryDocumentSnapshots.getDocuments();
+                        Log.d(TAG, "commentPages: Loaded " + docs.size() + " comments for song ID: " + songId);
+                        callback.onSuccess(toComments(docs), docs.isEmpty() ? after : docs.get(docs.size() - 1));
+                    })
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "commentPages: Error fetching comments for song ID: " + songId, e);
+                        callback.onError(e);
+                    });
+        };
+    }
+
+    /**
+     * Listen to the newest {@code limit} comments of a song. The first snapshot reports
+     * every comment as added; after that only the documents that changed are delivered.
+     * @param songId The ID of the song
+     * @param limit Size of the live window
+     * @param listener Receives the changes on the main thread
+     * @return Registration to remove when the screen stops
+     */
+    public ListenerRegistration listenToNewestComments(String songId, int limit, CommentChangeListener listener) {
+        return commentsQuery(songId)
+                .limit(limit)
+                .addSnapshotListener((snapshot, e) -> {
+                    if (e != null || snapshot == null) {
+                        Log.e(TAG, "listenToNewestComments: Listener failed for song ID: " + songId, e);
+                        listener.onError("Lỗi khi cập nhật bình luận: " + (e != null ? e.getMessage() : ""));
+                        return;
+                    }
+
+                    // Oldest comment still in the window, to tell a deletion from a comment pushed out by a newer one
+                    List<DocumentSnapshot> docs = snapshot.getDocuments();
+                    Date oldestInWindow = docs.isEmpty() ? null
+                            : docs.get(docs.size() - 1).getDate("timestamp", DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+
+                    for (DocumentChange change : snapshot.getDocumentChanges()) {
+                        DocumentSnapshot doc = change.getDocument();
+                        Comment comment = doc.toObject(Comment.class, DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+                        if (comment == null) {
+                            continue;
+                        }
+                        comment.setPending(doc.getMetadata().hasPendingWrites());
+                        switch (change.getType()) {
+                            case ADDED:
+                                listener.onCommentAdded(comment);
+                                break;
+                            case MODIFIED:
+                                listener.onCommentModified(comment);
+                                break;
+                            case REMOVED:
+                                boolean pushedOut = docs.size() == limit && comment.getTimestamp() != null
+                                        && oldestInWindow != null && !comment.getTimestamp().after(oldestInWindow);
+                                if (!pushedOut) {
+                                    listener.onCommentRemoved(doc.getId());
+                                }
+                                break;
+                        }
+                    }
+                });
+    }
+
+    private Query commentsQuery(String songId) {
+        return firestore.collection(COMMENTS_COLLECTION)
+                .whereEqualTo("songId", songId)
+                .orderBy("timestamp", Query.Direction.DESCENDING);
+    }
+
+    private static List<Comment> toComments(List<DocumentSnapshot> documents) {
+        List<Comment> comments = new ArrayList<>();
+        for (DocumentSnapshot document : documents) {
+            try {
+                Comment comment = document.toObject(Comment.class);
+                if (comment != null) {
+                    comments.add(comment);
+                } else {
+                    Log.w(TAG, "toComments: Failed to convert document to Comment: " + document.getId());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "toComments: Error converting document to Comment: " + document.getId(), e);
+            }
+        }
+        return comments;
+    }
     
     /**
-     * Add a new comment to a song
+     * Add a new comment to a song. The comment is returned right away, marked pending,
+     * and written through {@link CommentOutbox}; its outcome is reported to the outbox
+     * listeners. The author's name and photo come from a local copy of the profile, so
+     * only the very first post has to read users/{uid} before returning.
      * @param songId The ID of the song
      * @param content Comment content
-     * @param callback Callback for result
+     * @param callback Receives the pending comment
      */
     public void addComment(String songId, String content, SingleCommentCallback callback) {
         FirebaseUser currentUser = firebaseAuth.getCurrentUser();
@@ -178,101 +262,162 @@ public class CommentRepository {
             callback.onError("Bạn cần đăng nhập để bình luận");
             return;
         }
+        String userId = currentUser.getUid();
         
         Log.d(TAG, "addComment: Adding comment for song ID: " + songId + 
-              ", user ID: " + currentUser.getUid() + 
+              ", user ID: " + userId + 
               ", content: " + content.substring(0, Math.min(20, content.length())) + "...");
-        
-        // Get user data from Firestore
-        firestore.collection("users").document(currentUser.getUid())
+
+        if (profiles.contains(KEY_USERNAME + userId)) {
+            postPending(userId, songId, content, profiles.getString(KEY_USERNAME + userId, null),
+                    profiles.getString(KEY_PHOTO_URL + userId, null), callback);
+            if (System.currentTimeMillis() - profiles.getLong(KEY_PROFILE_TIME + userId, 0) > PROFILE_MAX_AGE_MS) {
+                // Picked up by the next post
+                fetchProfile(userId, null);
+            }
+            return;
+        }
+
+        fetchProfile(userId, new SingleCommentCallback() {
+            @Override
+            public void onSuccess(Comment profile) {
+                postPending(userId, songId, content, profile.getUsername(), profile.getUserPhotoUrl(), callback);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                callback.onError(errorMessage);
+            }
+        });
+    }
+
+    private void postPending(String userId, String songId, String content, String username,
+                             String userPhotoUrl, SingleCommentCallback callback) {
+        // Id chosen here so a retried write lands on the same document
+        String commentId = firestore.collection(COMMENTS_COLLECTION).document().getId();
+        Comment comment = new Comment(commentId, userId, songId, content,
+                username != null ? username : "Anonymous", null, userPhotoUrl);
+        comment.setPending(true);
+        CommentOutbox.getInstance(context).enqueue(comment);
+        callback.onSuccess(comment);
+    }
+
+    /**
+     * Read users/{uid} and keep its username and photo for later posts
+     * @param callback Receives a Comment carrying only username and userPhotoUrl; may be null
+     */
+    private void fetchProfile(String userId, SingleCommentCallback callback) {
+        firestore.collection("users").document(userId)
                 .get()
                 .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String username = documentSnapshot.getString("username");
-                        String userPhotoUrl = documentSnapshot.getString("photoUrl");
-                        
-                        Log.d(TAG, "addComment: Retrieved user data. Username: " + username + 
-                              ", has photo: " + (userPhotoUrl != null && !userPhotoUrl.isEmpty()));
-                        
-                        // Create comment object
-                        Comment comment = new Comment();
-                        comment.setUserId(currentUser.getUid());
-                        comment.setSongId(songId);
-                        comment.setContent(content);
-                        comment.setUsername(username != null ? username : "Anonymous");
-                        comment.setUserPhotoUrl(userPhotoUrl);
-                        // Timestamp will be set by Firestore server
-                        
-                        Log.d(TAG, "addComment: Comment object created, saving to Firestore");
-                        
-                        // Save comment to Firestore
-                        firestore.collection(COMMENTS_COLLECTION)
-                                .add(comment)
-                                .addOnSuccessListener(documentReference -> {
-                                    String commentId = documentReference.getId();
-                                    Log.d(TAG, "addComment: Comment saved successfully with ID: " + commentId);
-                                    
-                                    comment.setCommentId(commentId);
-                                    callback.onSuccess(comment);
-                                })
-                                .addOnFailureListener(e -> {
-                                    Log.e(TAG, "addComment: Error saving comment to Firestore", e);
-                                    callback.onError("Lỗi khi thêm bình luận: " + e.getMessage());
-                                });
-                    } else {
-                        Log.w(TAG, "addComment: User document does not exist for user ID: " + currentUser.getUid());
-                        callback.onError("Không tìm thấy thông tin người dùng");
+                    if (!documentSnapshot.exists()) {
+                        Log.w(TAG, "fetchProfile: User document does not exist for user ID: " + userId);
+                        if (callback != null) {
+                            callback.onError("Không tìm thấy thông tin người dùng");
+                        }
+                        return;
+                    }
+                    String username = documentSnapshot.getString("username");
+                    String userPhotoUrl = documentSnapshot.getString("photoUrl");
+                    profiles.edit()
+                            .putString(KEY_USERNAME + userId, username)
+                            .putString(KEY_PHOTO_URL + userId, userPhotoUrl)
+                            .putLong(KEY_PROFILE_TIME + userId, System.currentTimeMillis())
+                            .apply();
+                    Log.d(TAG, "fetchProfile: Cached profile. Username: " + username);
+
+                    if (callback != null) {
+                        Comment profile = new Comment();
+                        profile.setUsername(username);
+                        profile.setUserPhotoUrl(userPhotoUrl);
+                        callback.onSuccess(profile);
                     }
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "addComment: Error getting user data", e);
-                    callback.onError("Lỗi khi tải thông tin người dùng: " + e.getMessage());
+                    Log.e(TAG, "fetchProfile: Error getting user data", e);
+                    if (callback != null) {
+                        callback.onError("Lỗi khi tải thông tin người dùng: " + e.getMessage());
+                    }
                 });
     }
     
     /**
-     * Delete a comment
-     * @param commentId The ID of the comment to delete
-     * @param callback Callback for result
+     * Delete a comment and uncount it in its song's stats, in one batch and without reading
+     * it first. Ownership is enforced by the delete rule in firestore.rules, which also
+     * rejects the batch when the comment is already gone, so a repeated delete can't
+     * decrement the count twice. The stats name the comment in lastCommentId, which the
+     * rules require to be deleted by the same batch.
+     * @param comment The comment to delete, as shown in the list
      */
-    public void deleteComment(String commentId, OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
+    public void deleteComment(Comment comment, OnSuccessListener<Void> onSuccessListener, OnFailureListener onFailureListener) {
         FirebaseUser currentUser = firebaseAuth.getCurrentUser();
         if (currentUser == null) {
             Log.w(TAG, "deleteComment: No user logged in");
             onFailureListener.onFailure(new Exception("Bạn cần đăng nhập để xóa bình luận"));
             return;
         }
+        // Saves a rejected round trip; the server checks again
+        if (!currentUser.getUid().equals(comment.getUserId())) {
+            Log.w(TAG, "deleteComment: User is not the owner of this comment");
+            onFailureListener.onFailure(new Exception("Bạn không có quyền xóa bình luận này"));
+            return;
+        }
+        String commentId = comment.getCommentId();
         
-        Log.d(TAG, "deleteComment: Attempting to delete comment ID: " + commentId + 
+        Log.d(TAG, "deleteComment: Deleting comment ID: " + commentId + 
               " by user ID: " + currentUser.getUid());
         
-        // Get the comment to check ownership
-        firestore.collection(COMMENTS_COLLECTION).document(commentId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    Comment comment = documentSnapshot.toObject(Comment.class);
-                    if (comment != null && comment.getUserId().equals(currentUser.getUid())) {
-                        // User is the owner, proceed with deletion
-                        Log.d(TAG, "deleteComment: User is owner, proceeding with deletion");
-                        
-                        firestore.collection(COMMENTS_COLLECTION).document(commentId)
-                                .delete()
-                                .addOnSuccessListener(aVoid -> {
-                                    Log.d(TAG, "deleteComment: Comment deleted successfully");
-                                    onSuccessListener.onSuccess(aVoid);
-                                })
-                                .addOnFailureListener(e -> {
-                                    Log.e(TAG, "deleteComment: Error deleting comment", e);
-                                    onFailureListener.onFailure(e);
-                                });
-                    } else {
-                        Log.w(TAG, "deleteComment: User is not the owner of this comment");
-                        onFailureListener.onFailure(new Exception("Bạn không có quyền xóa bình luận này"));
-                    }
+        DocumentReference commentRef = firestore.collection(COMMENTS_COLLECTION).document(commentId);
+        WriteBatch batch = firestore.batch();
+        batch.delete(commentRef);
+        batch.update(firestore.collection(STATS_COLLECTION).document(comment.getSongId()),
+                FieldPath.of(SongCommentStats.FIELD_COMMENT_COUNT), FieldValue.increment(-1),
+                FieldPath.of(SongCommentStats.FIELD_LATEST_COMMENTS, commentId), FieldValue.delete(),
+                FieldPath.of(SongCommentStats.FIELD_LAST_COMMENT_ID), commentId);
+        batch.commit()
+                .addOnSuccessListener(aVoid -> {
+                    Log.d(TAG, "deleteComment: Comment deleted successfully");
+                    onSuccessListener.onSuccess(aVoid);
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "deleteComment: Error getting comment", e);
-                    onFailureListener.onFailure(e);
+                    FirebaseFirestoreException.Code code = e instanceof FirebaseFirestoreException
+                            ? ((FirebaseFirestoreException) e).getCode() : null;
+                    if (code == FirebaseFirestoreException.Code.NOT_FOUND) {
+                        // Song without stats yet (older comments); backfill-comment-stats.js counts them
+                        Log.d(TAG, "deleteComment: No stats for song ID: " + comment.getSongId());
+                        commentRef.delete()
+                                .addOnSuccessListener(onSuccessListener)
+                                .addOnFailureListener(onFailureListener);
+                        return;
+                    }
+                    Log.e(TAG, "deleteComment: Error deleting comment", e);
+                    if (code == FirebaseFirestoreException.Code.PERMISSION_DENIED) {
+                        onFailureListener.onFailure(new Exception("Bạn không có quyền xóa bình luận này"));
+                    } else {
+                        onFailureListener.onFailure(e);
+                    }
                 });
     }
+
+    /**
+     * Comment count and latest comments for a list of songs, read from song_comment_stats
+     * in whereIn batches (one read per song, however long its thread is). A song without
+     * stats has no comments as far as the list is concerned and is left out of the result;
+     * songs whose comments predate the stats are filled in by backfill-comment-stats.js.
+     * @param songIds Songs to look up
+     * @param callback Called with the stats found
+     */
+    public void getCommentStats(List<String> songIds, CommentStatsCallback callback) {
+        statsFetcher.fetch(songIds, result -> {
+            if (!result.isComplete()) {
+                Log.w(TAG, "getCommentStats: Could not load " + result.getFailedKeys().size() + "/"
+                        + songIds.size() + " stats: " + result.getLastError().getMessage());
+                if (result.getValues().isEmpty()) {
+                    callback.onError("Lỗi khi tải số bình luận: " + result.getLastError().getMessage());
+                    return;
+                }
+            }
+            callback.onSuccess(result.getValues());
+        });
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,161 @@
+package com.example.beomusic.repositories;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.beomusic.models.Album;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory set of the signed-in user's favorite song ids.
+ *
+ * Hydrated from SharedPreferences on cold start, then kept current by a snapshot
+ * listener on the user's favorites in album_songs, so "is this a favorite?" is a
+ * set lookup instead of a Firestore read. Local writes are applied immediately.
+ * Must be used on the main thread.
+ */
+public class FavoriteIdsCache {
+    private static final String TAG = "FavoriteIdsCache";
+    private static final String PREF_NAME = "BeoMusicFavorites";
+    private static final String KEY_PREFIX = "favorite_ids_";
+
+    public interface Listener {
+        void onFavoritesChanged();
+    }
+
+    private static FavoriteIdsCache instance;
+
+    private final SharedPreferences preferences;
+    private final FirebaseFirestore firestore;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private String userId;
+    private Set<String> ids = new HashSet<>();
+    private boolean ready = false;
+    private ListenerRegistration registration;
+
+    public static synchronized FavoriteIdsCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new FavoriteIdsCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private FavoriteIdsCache(Context context) {
+        preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        firestore = FirebaseFirestore.getInstance();
+    }
+
+    /**
+     * Switch to the given user, loading their persisted set and starting the listener.
+     * Passing null (signed out) clears the set.
+     * @param uid Current user id or null
+     */
+    public void attach(String uid) {
+        if (uid == null ? userId == null : uid.equals(userId)) {
+            return;
+        }
+        detach();
+        userId = uid;
+        if (uid == null) {
+            return;
+        }
+
+        Set<String> persisted = preferences.getStringSet(KEY_PREFIX + uid, null);
+        if (persisted != null) {
+            ids = new HashSet<>(persisted);
+            ready = true;
+        }
+
+        String favoriteAlbumId = Album.generateFavoritesAlbumId(uid);
+        registration = firestore.collection("album_songs")
+                .whereEqualTo("albumId", favoriteAlbumId)
+                .addSnapshotListener((snapshot, e) -> {
+                    if (e != null || snapshot == null) {
+                        Log.w(TAG, "Listener error: " + (e != null ? e.getMessage() : "no snapshot"));
+                        return;
+                    }
+                    Set<String> fresh = new HashSet<>();
+                    for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                        String songId = doc.getString("songId");
+                        if (songId != null) {
+                            fresh.add(songId);
+                        }
+                    }
+                    replace(fresh);
+                });
+    }
+
+    /**
+     * @param uid User the caller is asking about
+     * @return true when the set reflects that user's favorites and can answer lookups
+     */
+    public boolean isReady(String uid) {
+        return ready && uid != null && uid.equals(userId);
+    }
+
+    public boolean contains(String songId) {
+        return songId != null && ids.contains(songId);
+    }
+
+    /**
+     * Apply a confirmed local write without waiting for the listener
+     * @param songId Song id
+     * @param favorite New state
+     */
+    public void update(String songId, boolean favorite) {
+        if (userId == null || songId == null) {
+            return;
+        }
+        boolean changed = favorite ? ids.add(songId) : ids.remove(songId);
+        if (changed) {
+            persist();
+            notifyListeners();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void replace(Set<String> fresh) {
+        boolean changed = !ready || !fresh.equals(ids);
+        ids = fresh;
+        ready = true;
+        if (changed) {
+            persist();
+            notifyListeners();
+        }
+    }
+
+    private void persist() {
+        preferences.edit().putStringSet(KEY_PREFIX + userId, new HashSet<>(ids)).apply();
+    }
+
+    private void notifyListeners() {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onFavoritesChanged();
+        }
+    }
+
+    private void detach() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        ids = new HashSet<>();
+        ready = false;
+    }
+}
@@ -3,8 +3,10 @@ package com.example.beomusic.repositories;
 import com.example.beomusic.models.Album;
 import com.example.beomusic.models.AlbumSong;
 import com.example.beomusic.models.Song;
+import com.example.beomusic.utils.BatchFetcher;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
@@ -14,15 +16,31 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
  * Repository class for handling user favorites operations
  */
 public class FavoriteRepository {
+    private static final String TAG = "FavoriteRepository";
+
+    // Firestore caps whereIn at 30 values per query
+    private static final int WHERE_IN_LIMIT = 30;
+    private static final int MAX_PARALLEL_QUERIES = 4;
+    private static final int MAX_ATTEMPTS = 3;
+    // Query results are parsed and merged here, off the main thread
+    private static final Executor backgroundExecutor = Executors.newSingleThreadExecutor();
+
     private final FirebaseFirestore firestore;
     private final FirebaseAuth firebaseAuth;
+    // Optional local set of favorite ids; null when created without a Context
+    private final FavoriteIdsCache favoriteIds;
+    private final BatchFetcher<String, Song> songFetcher;
 
     public interface FavoriteCallback {
         void onSuccess(boolean isFavorite);
@@ -32,11 +50,35 @@ public class FavoriteRepository {
     public interface FavoritesCallback {
         void onSuccess(List<Song> favoriteSongs);
         void onError(String errorMessage);
+
+        /**
+         * Called as leading chunks of a large favorites list arrive, before onSuccess
+         * @param loadedSongs Songs loaded so far, in favorites order
+         * @param totalCount Number of favorites being loaded
+         */
+        default void onProgress(List<Song> loadedSongs, int totalCount) {}
     }
 
     public FavoriteRepository() {
         firestore = FirebaseFirestore.getInstance();
         firebaseAuth = FirebaseAuth.getInstance();
+        favoriteIds = null;
+        songFetcher = createSongFetcher();
+    }
+
+    /**
+     * Repository that answers {@link #isFavorite} from a locally cached id set when possible
+     * @param context Any context
+     */
+    public FavoriteRepository(Context context) {
+        firestore = FirebaseFirestore.getInstance();
+        firebaseAuth = FirebaseAuth.getInstance();
+        favoriteIds = FavoriteIdsCache.getInstance(context);
+        songFetcher = createSongFetcher();
+    }
+
+    public FavoriteIdsCache getFavoriteIds() {
+        return favoriteIds;
     }
 
     /**
@@ -50,27 +92,7 @@ public class FavoriteRepository {
             callback.onError("Bạn cần đăng nhập để thêm bài hát vào danh sách yêu thích");
             return;
         }
-
-        String userId = currentUser.getUid();
-        String favoriteAlbumId = Album.generateFavoritesAlbumId(userId);
-
-        // Check if favorites album exists, create if not
-        firestore.collection("albums").document(favoriteAlbumId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (!documentSnapshot.exists()) {
-                        // Create favorites album
-                        Album favoritesAlbum = new Album(userId);
-                        firestore.collection("albums").document(favoriteAlbumId)
-                                .set(favoritesAlbum)
-                                .addOnSuccessListener(aVoid -> addSongToFavorites(userId, favoriteAlbumId, song, callback))
-                                .addOnFailureListener(e -> callback.onError("Lỗi khi tạo album yêu thích: " + e.getMessage()));
-                    } else {
-                        // Album already exists, add song
-                        addSongToFavorites(userId, favoriteAlbumId, song, callback);
-                    }
-                })
-                .addOnFailureListener(e -> callback.onError("Lỗi khi kiểm tra album yêu thích: " + e.getMessage()));
+        writeFavorite(currentUser.getUid(), song, true, "add", callback);
     }
 
     /**
@@ -84,38 +106,30 @@ public class FavoriteRepository {
             callback.onError("Bạn cần đăng nhập để xóa bài hát khỏi danh sách yêu thích");
             return;
         }
-
-        String userId = currentUser.getUid();
-        String favoriteAlbumId = Album.generateFavoritesAlbumId(userId);
-        String favoriteEntryId = AlbumSong.generateFavoriteEntryId(userId, song.getSongId());
-
-        firestore.collection("album_songs").document(favoriteEntryId)
-                .delete()
-                .addOnSuccessListener(aVoid -> {
-                    // Decrement song count in album document
-                    firestore.collection("albums").document(favoriteAlbumId)
-                            .update("songCount", FieldValue.increment(-1))
-                            .addOnSuccessListener(v -> callback.onSuccess(false))
-                            .addOnFailureListener(e -> 
-                                callback.onError("Lỗi khi cập nhật số lượng bài hát: " + e.getMessage())
-                            );
-                })
-                .addOnFailureListener(e -> callback.onError("Lỗi khi xóa bài hát khỏi danh sách yêu thích: " + e.getMessage()));
+        writeFavorite(currentUser.getUid(), song, false, "remove", callback);
     }
 
     /**
-     * Check if a song is in user's favorites
+     * Check if a song is in user's favorites. Answered synchronously when the local id set is ready.
      * @param song Song to check
      * @param callback Callback for result
      */
     public void isFavorite(Song song, FavoriteCallback callback) {
         FirebaseUser currentUser = firebaseAuth.getCurrentUser();
+        if (favoriteIds != null) {
+            favoriteIds.attach(currentUser != null ? currentUser.getUid() : null);
+        }
         if (currentUser == null) {
             callback.onSuccess(false);
             return;
         }
 
         String userId = currentUser.getUid();
+        // Trả lời ngay (đồng bộ) nếu đã có danh sách id yêu thích cục bộ
+        if (favoriteIds != null && favoriteIds.isReady(userId)) {
+            callback.onSuccess(favoriteIds.contains(song.getSongId()));
+            return;
+        }
         String favoriteEntryId = AlbumSong.generateFavoriteEntryId(userId, song.getSongId());
 
         firestore.collection("album_songs").document(favoriteEntryId)
@@ -125,8 +139,11 @@ public class FavoriteRepository {
     }
 
     /**
-     * Get all songs in user's favorites
-     * @param callback Callback for result
+     * Get all songs in user's favorites, in the order they were added.
+     * Songs come from the snapshot stored on each entry; only entries without one are
+     * fetched from "songs", in parallel chunks; chunks that keep failing are left out.
+     * Callbacks run on a background thread.
+     * @param callback Callback for result, receives onProgress while missing songs load
      */
     public void getFavoriteSongs(FavoritesCallback callback) {
         FirebaseUser currentUser = firebaseAuth.getCurrentUser();
@@ -138,58 +155,73 @@ public class FavoriteRepository {
         String userId = currentUser.getUid();
         String favoriteAlbumId = Album.generateFavoritesAlbumId(userId);
         
-        Log.d("FavoriteRepository", "Getting favorites for user: " + userId);
+        Log.d(TAG, "Getting favorites for user: " + userId);
 
         firestore.collection("album_songs")
                 .whereEqualTo("albumId", favoriteAlbumId)
+                .orderBy("addedDate", Query.Direction.ASCENDING)
                 .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
+                .addOnSuccessListener(backgroundExecutor, queryDocumentSnapshots -> {
                     List<String> songIds = new ArrayList<>();
+                    Map<String, Song> songsById = new HashMap<>();
+                    List<String> missingIds = new ArrayList<>();
                     for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
                         AlbumSong albumSong = doc.toObject(AlbumSong.class);
-                        if (albumSong != null) {
-                            songIds.add(albumSong.getSongId());
-                            Log.d("FavoriteRepository", "Found song ID: " + albumSong.getSongId());
+                        if (albumSong == null || albumSong.getSongId() == null) {
+                            continue;
+                        }
+                        songIds.add(albumSong.getSongId());
+                        if (albumSong.hasSnapshot()) {
+                            songsById.put(albumSong.getSongId(), albumSong.toSong());
+                        } else {
+                            missingIds.add(albumSong.getSongId());
                         }
                     }
 
-                    if (songIds.isEmpty()) {
-                        Log.d("FavoriteRepository", "No favorite songs found");
-                        callback.onSuccess(new ArrayList<>());
+                    // Stale snapshots (e.g. an expired previewUrl) are repaired too; the reconciler rate-limits itself
+                    AlbumSongSnapshotReconciler.getInstance().schedule(favoriteAlbumId);
+                    if (missingIds.isEmpty()) {
+                        Log.d(TAG, "Loaded " + songIds.size() + " favorites from snapshots");
+                        callback.onSuccess(inOrder(songIds, songsById));
                         return;
                     }
 
-                    // Lấy thông tin bài hát từ collection songs
-                    firestore.collection("songs")
-                            .whereIn("songId", songIds)
-                            .get()
-                            .addOnSuccessListener(songsSnapshot -> {
-                                List<Song> songs = new ArrayList<>();
-                                for (DocumentSnapshot doc : songsSnapshot.getDocuments()) {
-                                    try {
-                                        Song song = new Song();
-                                        song.setSongId(doc.getString("songId"));
-                                        song.setTitle(doc.getString("title"));
-                                        song.setArtist(doc.getString("artist"));
-                                        song.setFilePath(doc.getString("previewUrl"));
-                                        
-                                        Log.d("FavoriteRepository", "Loaded song: " + 
-                                            song.getTitle() + ", Preview URL: " + song.getFilePath());
-                                        
-                                        songs.add(song);
-                                    } catch (Exception e) {
-                                        Log.e("FavoriteRepository", "Error parsing song: " + e.getMessage());
-                                    }
+                    // Entries from before snapshots existed: fetch them now
+                    if (!songsById.isEmpty()) {
+                        callback.onProgress(inOrder(songIds, songsById), songIds.size());
+                    }
+                    long start = SystemClock.elapsedRealtime();
+                    songFetcher.fetch(missingIds, new BatchFetcher.Listener<String, Song>() {
+                        @Override
+                        public void onProgress(List<Song> loaded, int totalCount) {
+                            callback.onProgress(merge(loaded), songIds.size());
+                        }
+
+                        @Override
+                        public void onComplete(BatchFetcher.Result<String, Song> result) {
+                            if (!result.isComplete()) {
+                                Log.w(TAG, "Could not load " + result.getFailedKeys().size() + " favorites: "
+                                        + result.getLastError().getMessage());
+                                if (result.getValues().isEmpty() && songsById.isEmpty()) {
+                                    callback.onError("Lỗi khi lấy thông tin bài hát: " + result.getLastError().getMessage());
+                                    return;
                                 }
-                                callback.onSuccess(songs);
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e("FavoriteRepository", "Error getting songs: " + e.getMessage());
-                                callback.onError("Lỗi khi lấy thông tin bài hát: " + e.getMessage());
-                            });
+                            }
+                            Log.d(TAG, "Loaded " + result.getValues().size() + "/" + missingIds.size()
+                                    + " favorites without snapshot in " + (SystemClock.elapsedRealtime() - start) + "ms");
+                            callback.onSuccess(merge(result.getValues()));
+                        }
+
+                        private List<Song> merge(List<Song> fetched) {
+                            for (Song song : fetched) {
+                                songsById.put(song.getSongId(), song);
+                            }
+                            return inOrder(songIds, songsById);
+                        }
+                    });
                 })
-                .addOnFailureListener(e -> {
-                    Log.e("FavoriteRepository", "Error getting album_songs: " + e.getMessage());
+                .addOnFailureListener(backgroundExecutor, e -> {
+                    Log.e(TAG, "Error getting album_songs: " + e.getMessage());
                     callback.onError("Lỗi khi lấy danh sách yêu thích: " + e.getMessage());
                 });
     }
@@ -200,57 +232,125 @@ public class FavoriteRepository {
      * @param callback Callback for result
      */
     public void toggleFavorite(Song song, FavoriteCallback callback) {
-        isFavorite(song, new FavoriteCallback() {
-            @Override
-            public void onSuccess(boolean isFavorite) {
-                if (isFavorite) {
-                    removeFromFavorites(song, callback);
+        FirebaseUser currentUser = firebaseAuth.getCurrentUser();
+        if (currentUser == null) {
+            callback.onError("Bạn cần đăng nhập để thêm bài hát vào danh sách yêu thích");
+            return;
+        }
+        writeFavorite(currentUser.getUid(), song, null, "toggle", callback);
+    }
+
+    // Private helper methods
+
+    /**
+     * Add or remove a favorite in one transaction: the entry, the song document and the
+     * album's songCount either all change or none do, and the count can't drift when the
+     * same song is toggled from two devices at once.
+     * @param favorite true to add, false to remove, null to flip the current state
+     * @param operation Name used in the latency log
+     */
+    private void writeFavorite(String userId, Song song, Boolean favorite, String operation, FavoriteCallback callback) {
+        String favoriteAlbumId = Album.generateFavoritesAlbumId(userId);
+        DocumentReference albumRef = firestore.collection("albums").document(favoriteAlbumId);
+        DocumentReference entryRef = firestore.collection("album_songs")
+                .document(AlbumSong.generateFavoriteEntryId(userId, song.getSongId()));
+        DocumentReference songRef = firestore.collection("songs").document(song.getSongId());
+        long start = SystemClock.elapsedRealtime();
+
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot entry = transaction.get(entryRef);
+            DocumentSnapshot album = transaction.get(albumRef);
+            boolean isFavorite = entry.exists();
+            boolean target = favorite != null ? favorite : !isFavorite;
+            if (target == isFavorite) {
+                return target;
+            }
+
+            if (target) {
+                if (album.exists()) {
+                    transaction.update(albumRef, "songCount", FieldValue.increment(1));
                 } else {
-                    addToFavorites(song, callback);
+                    Album favoritesAlbum = new Album(userId);
+                    favoritesAlbum.setSongCount(1);
+                    transaction.set(albumRef, favoritesAlbum);
+                }
+                transaction.set(songRef, toSongData(song));
+                transaction.set(entryRef, new AlbumSong(favoriteAlbumId, song));
+            } else {
+                transaction.delete(entryRef);
+                if (album.exists()) {
+                    transaction.update(albumRef, "songCount", FieldValue.increment(-1));
                 }
             }
-
-            @Override
-            public void onError(String errorMessage) {
-                callback.onError(errorMessage);
+            return target;
+        }).addOnSuccessListener(isFavorite -> {
+            Log.d(TAG, operation + " favorite " + song.getSongId() + " in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+            if (favoriteIds != null) {
+                favoriteIds.update(song.getSongId(), isFavorite);
             }
+            callback.onSuccess(isFavorite);
+        }).addOnFailureListener(e -> {
+            Log.e(TAG, operation + " favorite failed after " + (SystemClock.elapsedRealtime() - start)
+                    + "ms: " + e.getMessage());
+            callback.onError("Lỗi khi cập nhật danh sách yêu thích: " + e.getMessage());
         });
     }
 
-    // Private helper methods
-    private void addSongToFavorites(String userId, String favoriteAlbumId, Song song, FavoriteCallback callback) {
-        String favoriteEntryId = AlbumSong.generateFavoriteEntryId(userId, song.getSongId());
-        
-        // Chỉ lưu thông tin cần thiết
+    /**
+     * Song details by id in whereIn-sized chunks, a few at a time, delivered in id order
+     * so the UI can show the leading part of the list while the rest is still loading.
+     */
+    private BatchFetcher<String, Song> createSongFetcher() {
+        return new BatchFetcher<>((songIds, batchCallback) -> firestore.collection("songs")
+                .whereIn("songId", songIds)
+                .get()
+                .addOnSuccessListener(backgroundExecutor, snapshot -> {
+                    List<Song> songs = new ArrayList<>();
+                    for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                        songs.add(fromSongDocument(doc));
+                    }
+                    batchCallback.onSuccess(songs);
+                })
+                .addOnFailureListener(backgroundExecutor, batchCallback::onError),
+                Song::getSongId, WHERE_IN_LIMIT, MAX_PARALLEL_QUERIES, MAX_ATTEMPTS);
+    }
+
+    // Songs in the given id order, skipping ids that could not be resolved
+    private static List<Song> inOrder(List<String> songIds, Map<String, Song> songsById) {
+        List<Song> ordered = new ArrayList<>();
+        for (String songId : songIds) {
+            Song song = songsById.get(songId);
+            if (song != null) {
+                ordered.add(song);
+            }
+        }
+        return ordered;
+    }
+
+    private static Song fromSongDocument(DocumentSnapshot doc) {
+        Song song = new Song();
+        song.setSongId(doc.getString("songId"));
+        song.setTitle(doc.getString("title"));
+        song.setArtist(doc.getString("artist"));
+        song.setFilePath(doc.getString("previewUrl"));
+        song.setThumbnailUrl(doc.getString("thumbnailUrl"));
+        Long duration = doc.getLong("duration");
+        if (duration != null) {
+            song.setDuration(duration.intValue());
+        }
+        return song;
+    }
+
+    // Chỉ lưu thông tin cần thiết
+    private static Map<String, Object> toSongData(Song song) {
         Map<String, Object> songData = new HashMap<>();
         songData.put("songId", song.getSongId());        // Deezer track ID
         songData.put("title", song.getTitle());          // Tên bài hát
         songData.put("artist", song.getArtist());        // Tên nghệ sĩ
         songData.put("previewUrl", song.getFilePath());  // Preview URL từ Deezer
-        
-        // Lưu vào Firestore
-        firestore.collection("songs").document(song.getSongId())
-                .set(songData)
-                .addOnSuccessListener(aVoid -> {
-                    createAlbumSongEntry(favoriteAlbumId, favoriteEntryId, song, callback);
-                })
-                .addOnFailureListener(e -> callback.onError("Lỗi khi lưu bài hát: " + e.getMessage()));
-    }
-
-    private void createAlbumSongEntry(String favoriteAlbumId, String favoriteEntryId, Song song, FavoriteCallback callback) {
-        AlbumSong favoriteEntry = new AlbumSong(favoriteAlbumId, song.getSongId());
-        
-        firestore.collection("album_songs").document(favoriteEntryId)
-                .set(favoriteEntry)
-                .addOnSuccessListener(aVoid -> {
-                    // Increment song count in album document
-                    firestore.collection("albums").document(favoriteAlbumId)
-                            .update("songCount", FieldValue.increment(1))
-                            .addOnSuccessListener(v -> callback.onSuccess(true))
-                            .addOnFailureListener(e -> 
-                                callback.onError("Lỗi khi cập nhật số lượng bài hát: " + e.getMessage())
-                            );
-                })
-                .addOnFailureListener(e -> callback.onError("Lỗi khi thêm bài hát vào danh sách yêu thích: " + e.getMessage()));
+        songData.put("thumbnailUrl", song.getThumbnailUrl());
+        songData.put("duration", song.getDuration());
+        return songData;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package com.example.beomusic.repositories;
+
+import com.example.beomusic.API.Cancellable;
+import com.example.beomusic.API.DeezerApiService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of in-flight requests keyed by a normalized request key.
+ *
+ * Identical concurrent requests share one underlying call: later callers subscribe to
+ * the running request instead of starting another. Each caller gets its own handle;
+ * the underlying call (and its connection) is only cancelled once every subscriber
+ * has cancelled.
+ */
+public class InFlightRequests<T> {
+
+    public interface Starter<T> {
+        Cancellable start(DeezerApiService.ApiCallback<T> callback);
+    }
+
+    private final Map<String, Group> groups = new HashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    private class Group {
+        final String key;
+        final List<Subscription> subscribers = new ArrayList<>();
+        Cancellable call;
+        boolean finished;
+
+        Group(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * One caller's interest in a shared request
+     */
+    public class Subscription implements Cancellable {
+        private final Group group;
+        private final DeezerApiService.ApiCallback<T> callback;
+        private volatile boolean cancelled;
+
+        Subscription(Group group, DeezerApiService.ApiCallback<T> callback) {
+            this.group = group;
+            this.callback = callback;
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            leave(this);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Join the in-flight request for a key, or start it if none is running
+     * @param key Normalized request key
+     * @param callback Callback for this caller
+     * @param starter Starts the underlying request when there is nothing to join
+     * @return Handle to cancel this caller's subscription
+     */
+    public Subscription join(String key, DeezerApiService.ApiCallback<T> callback, Starter<T> starter) {
+        Group group;
+        Subscription subscription;
+        boolean isNew;
+        synchronized (groups) {
+            group = groups.get(key);
+            isNew = group == null;
+            if (isNew) {
+                group = new Group(key);
+                groups.put(key, group);
+            }
+            subscription = new Subscription(group, callback);
+            group.subscribers.add(subscription);
+        }
+
+        if (!isNew) {
+            coalesced.incrementAndGet();
+            return subscription;
+        }
+
+        started.incrementAndGet();
+        Group target = group;
+        Cancellable call = starter.start(new DeezerApiService.ApiCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                for (Subscription s : finish(target)) {
+                    s.callback.onSuccess(result);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                for (Subscription s : finish(target)) {
+                    s.callback.onError(e);
+                }
+            }
+        });
+
+        synchronized (groups) {
+            target.call = call;
+            // Everyone may have left while the request was being started
+            if (!target.finished && target.subscribers.isEmpty()) {
+                call.cancel();
+            }
+        }
+        return subscription;
+    }
+
+    public long getStartedCount() { return started.get(); }
+    public long getCoalescedCount() { return coalesced.get(); }
+    public long getCancelledCount() { return cancelled.get(); }
+
+    private List<Subscription> finish(Group group) {
+        synchronized (groups) {
+            group.finished = true;
+            if (groups.get(group.key) == group) {
+                groups.remove(group.key);
+            }
+            List<Subscription> active = new ArrayList<>();
+            for (Subscription s : group.subscribers) {
+                if (!s.cancelled) {
+                    active.add(s);
+                }
+            }
+            group.subscribers.clear();
+            return active;
+        }
+    }
+
+    private void leave(Subscription subscription) {
+        Cancellable toCancel = null;
+        synchronized (groups) {
+            Group group = subscription.group;
+            group.subscribers.remove(subscription);
+            if (!group.finished && group.subscribers.isEmpty()) {
+                if (groups.get(group.key) == group) {
+                    groups.remove(group.key);
+                }
+                toCancel = group.call;
+                cancelled.incrementAndGet();
+            }
+        }
+        if (toCancel != null) {
+            toCancel.cancel();
+        }
+    }
+}
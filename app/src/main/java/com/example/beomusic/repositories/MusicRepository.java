@@ -1,18 +1,179 @@
 package com.example.beomusic.repositories;
 
+import android.content.Context;
+import android.util.Log;
+
+import com.example.beomusic.API.Cancellable;
 import com.example.beomusic.API.DeezerApiService;
 import com.example.beomusic.models.Song;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class MusicRepository {
+    private static final String TAG = "MusicRepository";
+
     private DeezerApiService apiService;
+    private SearchCache searchCache;
+    // Shared by every repository instance so identical searches coalesce app-wide
+    private static final InFlightRequests<List<Song>> inFlight = new InFlightRequests<>();
+
+    /**
+     * Handle for one search
+     */
+    public interface Search extends Cancellable {
+        /**
+         * @return true until the last result (or the error) has been delivered, including
+         * while a stale cached result is shown and the refresh is still running
+         */
+        boolean isInFlight();
+    }
 
-    public MusicRepository() {
+    public MusicRepository(Context context) {
         this.apiService = new DeezerApiService();
+        this.searchCache = SearchCache.getInstance(context);
+    }
+
+    /**
+     * Search songs, serving cached results first (stale-while-revalidate).
+     * A fresh cached result is returned without touching the network. A stale one is
+     * returned immediately and then, once the background refresh finishes, the callback's
+     * onSuccess is called a second time with the new list.
+     * Identical concurrent searches share one network request.
+     * @param query Search query
+     * @param callback Callback for result, may receive onSuccess twice
+     * @return Handle to cancel the search; a cancelled search never calls back
+     */
+    public Search searchSongs(String query, DeezerApiService.ApiCallback<List<Song>> callback) {
+        String key = SearchCache.normalize(query);
+        SearchRequest request = new SearchRequest(callback);
+
+        searchCache.get(key, entry -> {
+            if (request.isCancelled()) {
+                return;
+            }
+            if (entry == null) {
+                fetchFromNetwork(query, key, request, false);
+                return;
+            }
+
+            request.deliver(entry.songs, entry.isFresh());
+            if (!entry.isFresh()) {
+                fetchFromNetwork(query, key, request, true);
+            }
+            Log.d(TAG, "Cache: " + searchCache.getStats());
+        });
+        return request;
+    }
+
+    /**
+     * Create a paging source that continues a search from its first page
+     * @param query Search query
+     * @param firstPage Results already loaded through {@link #searchSongs}
+     * @param listener Receives the current window of songs
+     * @return Paging source, to be released by the caller
+     */
+    public SearchPagingSource createPagingSource(String query, List<Song> firstPage, SearchPagingSource.Listener listener) {
+        return new SearchPagingSource(apiService, query, firstPage, listener);
+    }
+
+    public SearchCache getSearchCache() {
+        return searchCache;
     }
 
-    public void searchSongs(String query, DeezerApiService.ApiCallback<List<Song>> callback) {
-        apiService.searchSongs(query, callback);
+    private void fetchFromNetwork(String query, String key, SearchRequest request, boolean revalidating) {
+        Cancellable subscription = inFlight.join(key, new DeezerApiService.ApiCallback<List<Song>>() {
+            @Override
+            public void onSuccess(List<Song> result) {
+                request.deliver(result, true);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (revalidating) {
+                    // Stale data is already on screen, keep it
+                    Log.w(TAG, "Revalidation failed for \"" + key + "\": " + e.getMessage());
+                    request.finish();
+                } else {
+                    request.fail(e);
+                }
+            }
+        }, shared -> apiService.searchSongs(query, new DeezerApiService.ApiCallback<List<Song>>() {
+            @Override
+            public void onSuccess(List<Song> result) {
+                searchCache.put(key, result);
+                shared.onSuccess(result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                shared.onError(e);
+            }
+        }));
+        request.attach(subscription);
+    }
+
+    /**
+     * Caller-facing handle for one search. Subscribers of a shared request each get a
+     * copy of the result list so they can't affect each other.
+     */
+    private static class SearchRequest implements Search {
+        private final DeezerApiService.ApiCallback<List<Song>> callback;
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private volatile Cancellable network;
+
+        SearchRequest(DeezerApiService.ApiCallback<List<Song>> callback) {
+            this.callback = callback;
+        }
+
+        void attach(Cancellable subscription) {
+            network = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            }
+        }
+
+        /**
+         * @param last false when a refresh will deliver again
+         */
+        void deliver(List<Song> songs, boolean last) {
+            if (last) {
+                finished = true;
+            }
+            if (!cancelled) {
+                callback.onSuccess(new ArrayList<>(songs));
+            }
+        }
+
+        void finish() {
+            finished = true;
+        }
+
+        void fail(Exception e) {
+            finished = true;
+            if (!cancelled) {
+                callback.onError(e);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Cancellable subscription = network;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isInFlight() {
+            return !cancelled && !finished;
+        }
     }
 }
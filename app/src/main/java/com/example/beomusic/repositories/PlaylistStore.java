@@ -0,0 +1,82 @@
+package com.example.beomusic.repositories;
+
+import android.os.SystemClock;
+
+import com.example.beomusic.models.Song;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide holder for song lists handed from one screen to another.
+ *
+ * Screens put a list here and pass only the returned id in the Intent, so the songs
+ * are never serialized through the Binder. Only the most recent lists are kept; an id
+ * from a previous process (after the app was killed and restored) simply isn't found.
+ */
+public class PlaylistStore {
+    public static final String EXTRA_PLAYLIST_ID = "playlist_id";
+    // Set by the launching screen so the player can log how long it took to start
+    public static final String EXTRA_LAUNCH_TIME = "launch_time";
+
+    private static final int MAX_PLAYLISTS = 8;
+
+    private static final PlaylistStore instance = new PlaylistStore();
+
+    private final Map<String, List<Song>> playlists = new LinkedHashMap<String, List<Song>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Song>> eldest) {
+            return size() > MAX_PLAYLISTS;
+        }
+    };
+    // Ids differ between processes, so a stale id never matches a new list
+    private final String prefix = Long.toHexString(SystemClock.elapsedRealtimeNanos()) + "-";
+    private final AtomicLong nextId = new AtomicLong();
+
+    public static PlaylistStore getInstance() {
+        return instance;
+    }
+
+    private PlaylistStore() { }
+
+    /**
+     * Store a list and get a handle that can be passed in an Intent
+     * @param songs Songs, copied so later changes by the caller don't show through
+     * @return Playlist id
+     */
+    public String put(List<Song> songs) {
+        String id = prefix + nextId.incrementAndGet();
+        List<Song> copy = copySongs(songs);
+        synchronized (playlists) {
+            playlists.put(id, copy);
+        }
+        return id;
+    }
+
+    /**
+     * @param id Playlist id from {@link #put}
+     * @return A copy of the list the caller may change, or null if it is no longer
+     *         (or was never) in this process
+     */
+    public List<Song> get(String id) {
+        if (id == null) {
+            return null;
+        }
+        List<Song> songs;
+        synchronized (playlists) {
+            songs = playlists.get(id);
+        }
+        return songs != null ? copySongs(songs) : null;
+    }
+
+    private static List<Song> copySongs(List<Song> songs) {
+        List<Song> copy = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            copy.add(new Song(song));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.beomusic.repositories;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.beomusic.models.Song;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache for search results: a size-bounded in-memory LRU in front of
+ * a disk tier with a TTL. Entries are keyed by the normalized query.
+ */
+public class SearchCache {
+    private static final String TAG = "SearchCache";
+    private static final String DIR_NAME = "search_cache";
+
+    private static final int MEMORY_ENTRIES = 24;
+    private static final int DISK_ENTRIES = 100;
+    // Entries younger than this are served without revalidation
+    private static final long FRESH_MS = 5 * 60 * 1000L;
+    // Disk entries older than this are dropped instead of being served stale
+    private static final long DISK_TTL_MS = 24 * 60 * 60 * 1000L;
+
+    private static volatile SearchCache instance;
+
+    private final File directory;
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final LruCache<String, Entry> memory = new LruCache<>(MEMORY_ENTRIES);
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+
+    /**
+     * A cached result list and the wall-clock time it was fetched
+     */
+    public static class Entry {
+        public final List<Song> songs;
+        public final long fetchedAt;
+
+        Entry(List<Song> songs, long fetchedAt) {
+            this.songs = songs;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() - fetchedAt < FRESH_MS;
+        }
+    }
+
+    public interface LookupCallback {
+        // entry is null on a miss
+        void onResult(Entry entry);
+    }
+
+    public static SearchCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SearchCache.class) {
+                if (instance == null) {
+                    instance = new SearchCache(new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+                }
+            }
+        }
+        return instance;
+    }
+
+    private SearchCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Normalize a query so that "Alan  Walker " and "alan walker" share one entry
+     * @param query Raw query
+     * @return Cache key
+     */
+    public static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Look up an entry in memory first, then on disk (off the calling thread)
+     * @param key Normalized query
+     * @param callback Receives the entry or null; called synchronously on a memory hit
+     */
+    public void get(String key, LookupCallback callback) {
+        Entry cached = memory.get(key);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            countStale(cached);
+            callback.onResult(copyOf(cached));
+            return;
+        }
+
+        diskExecutor.execute(() -> {
+            Entry fromDisk = readFromDisk(key);
+            if (fromDisk == null) {
+                misses.incrementAndGet();
+                callback.onResult(null);
+                return;
+            }
+            diskHits.incrementAndGet();
+            countStale(fromDisk);
+            memory.put(key, fromDisk);
+            callback.onResult(copyOf(fromDisk));
+        });
+    }
+
+    /**
+     * Store a fresh result in both tiers
+     * @param key Normalized query
+     * @param songs Result list
+     */
+    public void put(String key, List<Song> songs) {
+        // The caller keeps using its songs, later changes must not reach the cache
+        Entry entry = new Entry(copySongs(songs), System.currentTimeMillis());
+        memory.put(key, entry);
+        diskExecutor.execute(() -> writeToDisk(key, entry));
+    }
+
+    public String getStats() {
+        return String.format(Locale.US,
+                "memoryHits=%d, diskHits=%d, misses=%d, staleHits=%d, memoryEvictions=%d, diskEvictions=%d",
+                memoryHits.get(), diskHits.get(), misses.get(), staleHits.get(),
+                memory.evictionCount(), diskEvictions.get());
+    }
+
+    public long getMemoryHits() { return memoryHits.get(); }
+    public long getDiskHits() { return diskHits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getStaleHits() { return staleHits.get(); }
+    public long getEvictions() { return memory.evictionCount() + diskEvictions.get(); }
+
+    private void countStale(Entry entry) {
+        if (!entry.isFresh()) {
+            staleHits.incrementAndGet();
+        }
+    }
+
+    // Callers may mutate the list and the songs they receive (e.g. HomeActivity fills in songId)
+    private static Entry copyOf(Entry entry) {
+        return new Entry(copySongs(entry.songs), entry.fetchedAt);
+    }
+
+    private static List<Song> copySongs(List<Song> songs) {
+        List<Song> copies = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            copies.add(new Song(song));
+        }
+        return copies;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long fetchedAt = in.readLong();
+            if (System.currentTimeMillis() - fetchedAt > DISK_TTL_MS) {
+                file.delete();
+                diskEvictions.incrementAndGet();
+                return null;
+            }
+            List<Song> songs = (List<Song>) in.readObject();
+            return new Entry(songs, fetchedAt);
+        } catch (Exception e) {
+            // Unreadable or written by an older Song class: treat as a miss
+            Log.w(TAG, "readFromDisk: dropping entry for " + key + ": " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        long start = SystemClock.elapsedRealtime();
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "writeToDisk: cannot create " + directory);
+            return;
+        }
+        File file = fileFor(key);
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeLong(entry.fetchedAt);
+            out.writeObject(entry.songs);
+        } catch (Exception e) {
+            Log.w(TAG, "writeToDisk: failed for " + key + ": " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        trimDisk();
+        Log.d(TAG, "writeToDisk: " + key + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= DISK_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length - DISK_ENTRIES; i++) {
+            if (files[i].delete()) {
+                diskEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format(Locale.US, "%02x", b));
+            }
+            return new File(directory, name.toString());
+        } catch (Exception e) {
+            return new File(directory, Integer.toHexString(key.hashCode()));
+        }
+    }
+}
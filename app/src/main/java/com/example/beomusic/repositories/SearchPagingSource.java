@@ -0,0 +1,256 @@
+package com.example.beomusic.repositories;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.beomusic.API.Cancellable;
+import com.example.beomusic.API.DeezerApiService;
+import com.example.beomusic.models.Song;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Loads search results page by page as the list is scrolled.
+ *
+ * Only a bounded window of consecutive pages is kept; when the window grows past
+ * {@link #MAX_PAGES_IN_MEMORY} the page furthest from the scroll direction is dropped
+ * and reloaded if the user scrolls back to it. The page after (or before) the window
+ * is prefetched in the background so it can be attached without waiting.
+ *
+ * All public methods must be called on the main thread; the listener is called there too.
+ */
+public class SearchPagingSource {
+    private static final String TAG = "SearchPagingSource";
+
+    // Deezer's default page size, so page 0 can come from a plain (cached) search
+    public static final int PAGE_SIZE = 25;
+    private static final int MAX_PAGES_IN_MEMORY = 4;
+    // Load the next page when the last visible item is this close to the window edge
+    private static final int PREFETCH_DISTANCE = 10;
+
+    public interface Listener {
+        void onWindowChanged(List<Song> window);
+        void onError(Exception e);
+    }
+
+    private final DeezerApiService apiService;
+    private final String query;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Pages currently in the window, by page number
+    private final TreeMap<Integer, List<Song>> pages = new TreeMap<>();
+    // Pages loaded ahead of time, only kept while adjacent to the window
+    private final Map<Integer, List<Song>> prefetched = new HashMap<>();
+    private final Map<Integer, Cancellable> loading = new HashMap<>();
+    // Pages the user is waiting for, attached as soon as they arrive
+    private final Set<Integer> pendingAttach = new HashSet<>();
+
+    private int lastPage = Integer.MAX_VALUE;
+    private boolean released = false;
+
+    /**
+     * @param apiService Deezer API
+     * @param query Search query
+     * @param firstPage Results of page 0 (e.g. from MusicRepository's cached search)
+     * @param listener Receives the current window of songs
+     */
+    public SearchPagingSource(DeezerApiService apiService, String query, List<Song> firstPage, Listener listener) {
+        this.apiService = apiService;
+        this.query = query;
+        this.listener = listener;
+
+        pages.put(0, new ArrayList<>(firstPage));
+        if (firstPage.size() < PAGE_SIZE) {
+            lastPage = 0;
+        }
+        publish();
+        prefetch(1);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Replace page 0 with fresher results, if it is still in the window
+     * @param songs New first page
+     */
+    public void refreshFirstPage(List<Song> songs) {
+        if (released || !pages.containsKey(0)) {
+            return;
+        }
+        pages.put(0, new ArrayList<>(songs));
+        publish();
+    }
+
+    /**
+     * Tell the source which window positions are visible so it can load or drop pages
+     * @param firstVisible First visible adapter position
+     * @param lastVisible Last visible adapter position
+     */
+    public void onVisibleRange(int firstVisible, int lastVisible) {
+        if (released || pages.isEmpty()) {
+            return;
+        }
+        int windowSize = windowSize();
+        if (lastVisible >= windowSize - PREFETCH_DISTANCE) {
+            requestPage(pages.lastKey() + 1);
+        }
+        if (firstVisible <= PREFETCH_DISTANCE && pages.firstKey() > 0) {
+            requestPage(pages.firstKey() - 1);
+        }
+    }
+
+    /**
+     * Cancel outstanding loads. The listener is not called afterwards.
+     */
+    public void release() {
+        released = true;
+        for (Cancellable call : loading.values()) {
+            call.cancel();
+        }
+        loading.clear();
+        pendingAttach.clear();
+        prefetched.clear();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void requestPage(int page) {
+        if (page < 0 || page > lastPage) {
+            return;
+        }
+        List<Song> ready = prefetched.remove(page);
+        if (ready != null) {
+            attach(page, ready);
+            return;
+        }
+        pendingAttach.add(page);
+        load(page);
+    }
+
+    private void prefetch(int page) {
+        if (page < 0 || page > lastPage || pages.containsKey(page) || prefetched.containsKey(page)) {
+            return;
+        }
+        load(page);
+    }
+
+    private void load(int page) {
+        if (loading.containsKey(page)) {
+            return;
+        }
+        Cancellable call = apiService.searchSongs(query, page * PAGE_SIZE, PAGE_SIZE,
+                new DeezerApiService.ApiCallback<DeezerApiService.SearchPage>() {
+                    @Override
+                    public void onSuccess(DeezerApiService.SearchPage result) {
+                        mainHandler.post(() -> onPageLoaded(page, result));
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        mainHandler.post(() -> onPageFailed(page, e));
+                    }
+                });
+        loading.put(page, call);
+    }
+
+    private void onPageLoaded(int page, DeezerApiService.SearchPage result) {
+        loading.remove(page);
+        if (released) {
+            return;
+        }
+        if (!result.hasMore()) {
+            lastPage = Math.min(lastPage, page);
+        }
+        if (result.songs.isEmpty()) {
+            pendingAttach.remove(page);
+            return;
+        }
+
+        if (pendingAttach.remove(page)) {
+            attach(page, result.songs);
+        } else if (isAdjacent(page)) {
+            prefetched.put(page, result.songs);
+        }
+    }
+
+    private void onPageFailed(int page, Exception e) {
+        loading.remove(page);
+        if (released) {
+            return;
+        }
+        // A failed prefetch is retried when the user actually reaches the page
+        if (pendingAttach.remove(page)) {
+            listener.onError(e);
+        }
+    }
+
+    private void attach(int page, List<Song> songs) {
+        if (page == pages.lastKey() + 1) {
+            pages.put(page, songs);
+            while (pages.size() > MAX_PAGES_IN_MEMORY) {
+                pages.pollFirstEntry();
+            }
+            prefetch(page + 1);
+        } else if (page == pages.firstKey() - 1) {
+            pages.put(page, songs);
+            while (pages.size() > MAX_PAGES_IN_MEMORY) {
+                pages.pollLastEntry();
+            }
+            prefetch(page - 1);
+        } else {
+            Log.w(TAG, "attach: page " + page + " is not adjacent to the window, ignoring");
+            return;
+        }
+
+        pruneDistantPages();
+        publish();
+    }
+
+    private boolean isAdjacent(int page) {
+        return !pages.isEmpty() && (page == pages.lastKey() + 1 || page == pages.firstKey() - 1);
+    }
+
+    private void pruneDistantPages() {
+        Iterator<Integer> it = prefetched.keySet().iterator();
+        while (it.hasNext()) {
+            if (!isAdjacent(it.next())) {
+                it.remove();
+            }
+        }
+        Iterator<Map.Entry<Integer, Cancellable>> calls = loading.entrySet().iterator();
+        while (calls.hasNext()) {
+            Map.Entry<Integer, Cancellable> entry = calls.next();
+            if (!isAdjacent(entry.getKey())) {
+                entry.getValue().cancel();
+                pendingAttach.remove(entry.getKey());
+                calls.remove();
+            }
+        }
+    }
+
+    private int windowSize() {
+        int size = 0;
+        for (List<Song> songs : pages.values()) {
+            size += songs.size();
+        }
+        return size;
+    }
+
+    private void publish() {
+        List<Song> window = new ArrayList<>(windowSize());
+        for (List<Song> songs : pages.values()) {
+            window.addAll(songs);
+        }
+        listener.onWindowChanged(window);
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.beomusic.repositories;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.beomusic.models.Album;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Loads a user's albums page by page (newest first) as the album list is scrolled.
+ *
+ * The first page is kept in SharedPreferences so a cold start can show it before any
+ * network round trip; it is replaced as soon as the fresh first page arrives. The page
+ * after the loaded ones is fetched ahead of time and appended when the user scrolls
+ * within {@link #PREFETCH_DISTANCE} rows of the end.
+ *
+ * All methods must be called on the main thread; the listener is called there too.
+ */
+public class UserAlbumsPager {
+    private static final String TAG = "UserAlbumsPager";
+    private static final String PREF_NAME = "BeoMusicAlbums";
+    private static final String KEY_PREFIX = "first_page_";
+
+    public static final int PAGE_SIZE = 20;
+    private static final int PREFETCH_DISTANCE = 5;
+
+    public interface Listener {
+        /**
+         * @param albums All albums loaded so far
+         * @param fromCache true while showing the cached first page
+         */
+        void onAlbumsChanged(List<Album> albums, boolean fromCache);
+        void onError(String errorMessage);
+    }
+
+    private final AlbumRepository repository;
+    private final SharedPreferences preferences;
+    private final String userId;
+    private final Listener listener;
+
+    private final List<Album> albums = new ArrayList<>();
+    private DocumentSnapshot cursor;
+    private boolean hasMore = true;
+    // Next page, loaded before the user reaches it
+    private AlbumRepository.AlbumsPage prefetched;
+    private boolean loading = false;
+    private boolean appendWhenLoaded = false;
+    // Bumped on refresh so callbacks from an older load are ignored
+    private int generation = 0;
+    private boolean released = false;
+
+    public UserAlbumsPager(Context context, AlbumRepository repository, String userId, Listener listener) {
+        this.repository = repository;
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        this.userId = userId;
+        this.listener = listener;
+    }
+
+    /**
+     * Show the cached first page (if any), then load the real one
+     */
+    public void start() {
+        List<Album> cached = readCachedFirstPage();
+        if (cached != null) {
+            listener.onAlbumsChanged(new ArrayList<>(cached), true);
+        }
+        refresh();
+    }
+
+    /**
+     * Reload from the first page, e.g. after an album was created or deleted
+     */
+    public void refresh() {
+        generation++;
+        int loadGeneration = generation;
+        prefetched = null;
+        loading = true;
+        appendWhenLoaded = false;
+        repository.getUserAlbumsPage(userId, null, PAGE_SIZE, new AlbumRepository.AlbumsPageCallback() {
+            @Override
+            public void onSuccess(AlbumRepository.AlbumsPage page) {
+                if (released || loadGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                albums.clear();
+                albums.addAll(page.albums);
+                cursor = page.cursor;
+                hasMore = page.hasMore;
+                writeCachedFirstPage(page.albums);
+                listener.onAlbumsChanged(new ArrayList<>(albums), false);
+                loadNext();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                if (released || loadGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                listener.onError(errorMessage);
+            }
+        });
+    }
+
+    /**
+     * @param lastVisible Last visible adapter position
+     */
+    public void onVisibleRange(int lastVisible) {
+        if (released || lastVisible < albums.size() - PREFETCH_DISTANCE) {
+            return;
+        }
+        if (prefetched != null) {
+            append(prefetched);
+        } else if (loading) {
+            appendWhenLoaded = true;
+        } else if (hasMore) {
+            appendWhenLoaded = true;
+            loadNext();
+        }
+    }
+
+    public void release() {
+        released = true;
+        prefetched = null;
+    }
+
+    private void loadNext() {
+        if (loading || !hasMore || prefetched != null) {
+            return;
+        }
+        int loadGeneration = generation;
+        loading = true;
+        repository.getUserAlbumsPage(userId, cursor, PAGE_SIZE, new AlbumRepository.AlbumsPageCallback() {
+            @Override
+            public void onSuccess(AlbumRepository.AlbumsPage page) {
+                if (released || loadGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                if (appendWhenLoaded) {
+                    append(page);
+                } else {
+                    prefetched = page;
+                }
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                if (released || loadGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                // A failed prefetch is retried when the user reaches the end of the list
+                if (appendWhenLoaded) {
+                    appendWhenLoaded = false;
+                    listener.onError(errorMessage);
+                }
+            }
+        });
+    }
+
+    private void append(AlbumRepository.AlbumsPage page) {
+        prefetched = null;
+        appendWhenLoaded = false;
+        albums.addAll(page.albums);
+        cursor = page.cursor;
+        hasMore = page.hasMore;
+        listener.onAlbumsChanged(new ArrayList<>(albums), false);
+        // Keep one page ready ahead of the scroll position
+        loadNext();
+    }
+
+    private List<Album> readCachedFirstPage() {
+        String json = preferences.getString(KEY_PREFIX + userId, null);
+        if (json == null) {
+            return null;
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            List<Album> cached = new ArrayList<>();
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                Album album = new Album();
+                album.setAlbumId(o.getString("albumId"));
+                album.setUserId(userId);
+                album.setTitle(o.optString("title", null));
+                album.setDescription(o.optString("description", null));
+                album.setSongCount(o.optInt("songCount"));
+                album.setCreatedDate(o.has("createdDate") ? new Date(o.getLong("createdDate")) : null);
+                album.setUpdatedDate(o.has("updatedDate") ? new Date(o.getLong("updatedDate")) : null);
+                album.setCoverImageUrl(o.optString("coverImageUrl", null));
+                album.setCoverThumbnailUrl(o.optString("coverThumbnailUrl", null));
+                cached.add(album);
+            }
+            return cached;
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping unreadable cached albums: " + e.getMessage());
+            preferences.edit().remove(KEY_PREFIX + userId).apply();
+            return null;
+        }
+    }
+
+    private void writeCachedFirstPage(List<Album> firstPage) {
+        try {
+            JSONArray array = new JSONArray();
+            for (Album album : firstPage) {
+                JSONObject o = new JSONObject();
+                o.put("albumId", album.getAlbumId());
+                o.put("title", album.getTitle());
+                o.put("description", album.getDescription());
+                o.put("songCount", album.getSongCount());
+                if (album.getCreatedDate() != null) {
+                    o.put("createdDate", album.getCreatedDate().getTime());
+                }
+                if (album.getUpdatedDate() != null) {
+                    o.put("updatedDate", album.getUpdatedDate().getTime());
+                }
+                o.put("coverImageUrl", album.getCoverImageUrl());
+                o.put("coverThumbnailUrl", album.getCoverThumbnailUrl());
+                array.put(o);
+            }
+            preferences.edit().putString(KEY_PREFIX + userId, array.toString()).apply();
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not cache albums: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.beomusic.services;
+
+import android.media.MediaDataSource;
+
+import com.example.beomusic.repositories.AudioCache;
+
+import java.io.IOException;
+
+/**
+ * Feeds MediaPlayer from {@link AudioCache}: cached blocks come from disk, missing ones
+ * are fetched with a range request. MediaPlayer calls this from its own thread.
+ */
+public class CachedAudioDataSource extends MediaDataSource {
+
+    private final AudioCache cache;
+    private final String url;
+    // Opened on the first read, on MediaPlayer's thread: the first open reads the cache index
+    private AudioCache.Entry entry;
+
+    // MediaPlayer reads in small chunks; keep the current block to avoid re-reading it
+    private long blockIndex = -1;
+    private byte[] block;
+    private boolean closed = false;
+
+    public CachedAudioDataSource(AudioCache cache, String url) {
+        this.cache = cache;
+        this.url = url;
+    }
+
+    private AudioCache.Entry entry() throws IOException {
+        if (closed) {
+            throw new IOException("Data source closed");
+        }
+        if (entry == null) {
+            entry = cache.open(url);
+        }
+        return entry;
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        long length = getSize();
+        if (length >= 0 && position >= length) {
+            return -1;
+        }
+
+        long index = position / AudioCache.BLOCK_SIZE;
+        if (index != blockIndex) {
+            block = cache.readBlock(entry(), url, index);
+            blockIndex = index;
+        }
+        int inBlock = (int) (position - index * AudioCache.BLOCK_SIZE);
+        if (inBlock >= block.length) {
+            return -1;
+        }
+        int count = Math.min(size, block.length - inBlock);
+        System.arraycopy(block, inBlock, buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public synchronized long getSize() throws IOException {
+        AudioCache.Entry entry = entry();
+        if (cache.length(entry) < 0 && blockIndex < 0) {
+            // The first response carries the total size; keep its bytes for the first read
+            block = cache.readBlock(entry, url, 0);
+            blockIndex = 0;
+        }
+        return cache.length(entry);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            block = null;
+            if (entry != null) {
+                cache.close(entry);
+            }
+        }
+    }
+}
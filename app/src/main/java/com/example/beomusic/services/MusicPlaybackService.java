@@ -0,0 +1,455 @@
+package com.example.beomusic.services;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.graphics.drawable.Icon;
+import android.media.MediaMetadata;
+import android.media.session.MediaSession;
+import android.media.session.PlaybackState;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.beomusic.R;
+import com.example.beomusic.models.Song;
+import com.example.beomusic.repositories.AudioCache;
+import com.example.beomusic.views.album.SongDetailActivity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Foreground service that owns the play queue and the {@link PlaybackEngine}.
+ *
+ * Playback no longer depends on the screen that started it: activities bind to the
+ * service, read the current state and register a {@link PlaybackListener}. The service
+ * stays in the foreground while music plays and exposes a MediaSession so the
+ * notification, headset buttons and lock screen can control it.
+ */
+public class MusicPlaybackService extends Service {
+    private static final String TAG = "MusicPlaybackService";
+
+    private static final String CHANNEL_ID = "playback";
+    private static final int NOTIFICATION_ID = 1001;
+    // How long a paused service with no screen attached keeps its queue
+    private static final long IDLE_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    public static final String ACTION_PLAY_PAUSE = "com.example.beomusic.action.PLAY_PAUSE";
+    public static final String ACTION_NEXT = "com.example.beomusic.action.NEXT";
+    public static final String ACTION_PREVIOUS = "com.example.beomusic.action.PREVIOUS";
+
+    /**
+     * Playback events for the bound UI, delivered on the main thread
+     */
+    public interface PlaybackListener {
+        void onTrackChanged(int position, Song song);
+        void onTrackStarted(int position, int durationMs);
+        void onPlayStateChanged(boolean playing);
+        void onError(String message);
+    }
+
+    public class LocalBinder extends Binder {
+        public MusicPlaybackService getService() {
+            return MusicPlaybackService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final List<PlaybackListener> listeners = new ArrayList<>();
+
+    private PlaybackEngine engine;
+    private MediaSession mediaSession;
+    private NotificationManager notificationManager;
+
+    private List<Song> queue = new ArrayList<>();
+    private int currentPosition = -1;
+    private boolean repeat = false;
+    private boolean shuffle = false;
+    private boolean foreground = false;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable idleStop = () -> {
+        if (!clientsBound && !wantsToPlay()) {
+            Log.d(TAG, "Idle with no screen attached, stopping");
+            stop();
+        }
+    };
+    // onBind/onUnbind are called for the first and last client only
+    private boolean clientsBound = false;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        notificationManager = getSystemService(NotificationManager.class);
+        createNotificationChannel();
+
+        engine = new PlaybackEngine(new PlaybackEngine.Listener() {
+            @Override
+            public void onTrackAdvanced(int position) {
+                currentPosition = position;
+                for (PlaybackListener l : new ArrayList<>(listeners)) {
+                    l.onTrackChanged(position, queue.get(position));
+                }
+                updateSession();
+            }
+
+            @Override
+            public void onTrackStarted(int position, int durationMs) {
+                for (PlaybackListener l : new ArrayList<>(listeners)) {
+                    l.onTrackStarted(position, durationMs);
+                }
+                onPlayStateChanged();
+            }
+
+            @Override
+            public void onError(String message) {
+                for (PlaybackListener l : new ArrayList<>(listeners)) {
+                    l.onError(message);
+                }
+            }
+        });
+        engine.setQueuePolicy(this::nextPosition);
+        engine.setAudioCache(AudioCache.getInstance(this));
+
+        mediaSession = new MediaSession(this, TAG);
+        mediaSession.setCallback(new MediaSession.Callback() {
+            @Override public void onPlay() { resume(); }
+            @Override public void onPause() { pause(); }
+            @Override public void onSkipToNext() { skipToNext(); }
+            @Override public void onSkipToPrevious() { skipToPrevious(); }
+            @Override public void onSeekTo(long pos) { seekTo((int) pos); }
+            @Override public void onStop() { stop(); }
+        });
+        mediaSession.setActive(true);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_PLAY_PAUSE.equals(action)) {
+            if (wantsToPlay()) pause(); else resume();
+        } else if (ACTION_NEXT.equals(action)) {
+            skipToNext();
+        } else if (ACTION_PREVIOUS.equals(action)) {
+            skipToPrevious();
+        }
+        return START_NOT_STICKY;
+    }
+
+    // Screens start the service before binding, so it outlives unbinding (rotation,
+    // leaving the player while paused); it stops on stop() or after IDLE_TIMEOUT_MS idle
+    @Override
+    public IBinder onBind(Intent intent) {
+        onClientAttached();
+        return binder;
+    }
+
+    @Override
+    public void onRebind(Intent intent) {
+        onClientAttached();
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        clientsBound = false;
+        scheduleIdleStop();
+        // Get onRebind for the next screen
+        return true;
+    }
+
+    private void onClientAttached() {
+        clientsBound = true;
+        handler.removeCallbacks(idleStop);
+    }
+
+    private void scheduleIdleStop() {
+        handler.removeCallbacks(idleStop);
+        if (!clientsBound && !wantsToPlay()) {
+            handler.postDelayed(idleStop, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    @Override
+    public void onTaskRemoved(Intent rootIntent) {
+        super.onTaskRemoved(rootIntent);
+        if (!wantsToPlay()) {
+            stop();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(idleStop);
+        engine.release();
+        mediaSession.release();
+        // Also drops a paused notification detached from the service: tapping it later
+        // would open the player with nothing to play
+        leaveForeground(true);
+        listeners.clear();
+    }
+
+    // === Queue ===
+
+    /**
+     * Play a queue from the given position. If the same song is already loaded at that
+     * position (e.g. the activity was recreated) playback simply continues.
+     * @param songs Songs in the queue
+     * @param position Position to start from
+     */
+    public void playQueue(List<Song> songs, int position) {
+        if (songs == null || position < 0 || position >= songs.size()) {
+            return;
+        }
+        if (isSameTrack(songs, position)) {
+            Log.d(TAG, "playQueue: track already loaded, keeping playback");
+            return;
+        }
+        queue = new ArrayList<>(songs);
+        engine.setQueue(queue);
+        playAt(position);
+    }
+
+    public void playAt(int position) {
+        if (position < 0 || position >= queue.size()) {
+            return;
+        }
+        currentPosition = position;
+        for (PlaybackListener l : new ArrayList<>(listeners)) {
+            l.onTrackChanged(position, queue.get(position));
+        }
+        engine.play(position);
+        updateSession();
+    }
+
+    public void skipToNext() {
+        if (currentPosition < queue.size() - 1) {
+            playAt(currentPosition + 1);
+        }
+    }
+
+    public void skipToPrevious() {
+        if (currentPosition > 0) {
+            playAt(currentPosition - 1);
+        }
+    }
+
+    public List<Song> getQueue() {
+        return queue;
+    }
+
+    public int getCurrentPosition() {
+        return currentPosition;
+    }
+
+    public Song getCurrentSong() {
+        return currentPosition >= 0 && currentPosition < queue.size() ? queue.get(currentPosition) : null;
+    }
+
+    // === Transport ===
+
+    public void pause() {
+        engine.pause();
+        onPlayStateChanged();
+    }
+
+    public void resume() {
+        engine.resume();
+        onPlayStateChanged();
+    }
+
+    public void seekTo(int ms) {
+        engine.seekTo(ms);
+        updateSession();
+    }
+
+    public void stop() {
+        engine.release();
+        currentPosition = -1;
+        leaveForeground(true);
+        stopSelf();
+    }
+
+    public boolean isPlaying() {
+        return engine.isPlaying();
+    }
+
+    public boolean isPrepared() {
+        return engine.isPrepared();
+    }
+
+    /**
+     * @return Whether the user wants music playing: also true while a track buffers
+     *         (cold skip or auto-advance), false after an explicit pause or stop
+     */
+    public boolean wantsToPlay() {
+        return engine.getPlayWhenReady() && getCurrentSong() != null;
+    }
+
+    public int getPlaybackPosition() {
+        return engine.getCurrentPosition();
+    }
+
+    public int getDuration() {
+        return engine.getDuration();
+    }
+
+    public boolean isRepeat() { return repeat; }
+    public boolean isShuffle() { return shuffle; }
+
+    public void setRepeat(boolean repeat) {
+        this.repeat = repeat;
+        engine.refreshNext();
+    }
+
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+        engine.refreshNext();
+    }
+
+    public void addListener(PlaybackListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(PlaybackListener listener) {
+        listeners.remove(listener);
+    }
+
+    // === Internals ===
+
+    private boolean isSameTrack(List<Song> songs, int position) {
+        if (currentPosition != position || position >= queue.size() || queue.size() != songs.size()) {
+            return false;
+        }
+        String loaded = queue.get(position).getSongId();
+        return loaded != null && loaded.equals(songs.get(position).getSongId())
+                && engine.getCurrentIndex() == position;
+    }
+
+    private int nextPosition(int current, int size) {
+        if (repeat) {
+            return current;
+        } else if (shuffle) {
+            return new Random().nextInt(size);
+        } else {
+            return (current + 1) % size;
+        }
+    }
+
+    private void onPlayStateChanged() {
+        boolean playing = isPlaying();
+        scheduleIdleStop();
+        for (PlaybackListener l : new ArrayList<>(listeners)) {
+            l.onPlayStateChanged(playing);
+        }
+        updateSession();
+    }
+
+    private void updateSession() {
+        Song song = getCurrentSong();
+        if (song == null) {
+            return;
+        }
+        boolean playing = isPlaying();
+        boolean active = wantsToPlay();
+
+        mediaSession.setMetadata(new MediaMetadata.Builder()
+                .putString(MediaMetadata.METADATA_KEY_TITLE, song.getTitle())
+                .putString(MediaMetadata.METADATA_KEY_ARTIST, song.getArtist())
+                .putLong(MediaMetadata.METADATA_KEY_DURATION, engine.getDuration())
+                .build());
+        mediaSession.setPlaybackState(new PlaybackState.Builder()
+                .setActions(PlaybackState.ACTION_PLAY | PlaybackState.ACTION_PAUSE
+                        | PlaybackState.ACTION_PLAY_PAUSE | PlaybackState.ACTION_SKIP_TO_NEXT
+                        | PlaybackState.ACTION_SKIP_TO_PREVIOUS | PlaybackState.ACTION_SEEK_TO
+                        | PlaybackState.ACTION_STOP)
+                .setState(playing ? PlaybackState.STATE_PLAYING
+                                : active ? PlaybackState.STATE_BUFFERING : PlaybackState.STATE_PAUSED,
+                        engine.getCurrentPosition(), playing ? 1f : 0f)
+                .build());
+
+        Notification notification = buildNotification(song, active);
+        // Foreground follows the intent to play, not the player: leaving it during the
+        // buffering gap between tracks would make the next startForeground a background
+        // start, which Android 8+ rejects with the screen off
+        if (active) {
+            enterForeground(notification);
+        } else {
+            // Explicitly paused: the notification stays but can be swiped away
+            leaveForeground(false);
+            notificationManager.notify(NOTIFICATION_ID, notification);
+        }
+    }
+
+    // The service is already started by the screen that bound it, so it keeps running
+    // after every activity has unbound
+    private void enterForeground(Notification notification) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PLAYBACK);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+        foreground = true;
+    }
+
+    private void leaveForeground(boolean removeNotification) {
+        if (foreground) {
+            stopForeground(removeNotification ? STOP_FOREGROUND_REMOVE : STOP_FOREGROUND_DETACH);
+            foreground = false;
+        }
+        if (removeNotification) {
+            notificationManager.cancel(NOTIFICATION_ID);
+        }
+    }
+
+    private Notification buildNotification(Song song, boolean playing) {
+        Intent openPlayer = new Intent(this, SongDetailActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, openPlayer,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        return new Notification.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_play)
+                .setContentTitle(song.getTitle())
+                .setContentText(song.getArtist())
+                .setContentIntent(contentIntent)
+                .setOngoing(playing)
+                .setVisibility(Notification.VISIBILITY_PUBLIC)
+                .addAction(new Notification.Action.Builder(
+                        Icon.createWithResource(this, R.drawable.ic_previous), "Previous", actionIntent(ACTION_PREVIOUS)).build())
+                .addAction(new Notification.Action.Builder(
+                        Icon.createWithResource(this, playing ? R.drawable.ic_pause : R.drawable.ic_play),
+                        playing ? "Pause" : "Play",
+                        actionIntent(ACTION_PLAY_PAUSE)).build())
+                .addAction(new Notification.Action.Builder(
+                        Icon.createWithResource(this, R.drawable.ic_next), "Next", actionIntent(ACTION_NEXT)).build())
+                .setStyle(new Notification.MediaStyle()
+                        .setMediaSession(mediaSession.getSessionToken())
+                        .setShowActionsInCompactView(0, 1, 2))
+                .build();
+    }
+
+    private PendingIntent actionIntent(String action) {
+        Intent intent = new Intent(this, MusicPlaybackService.class).setAction(action);
+        return PendingIntent.getService(this, action.hashCode(), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void createNotificationChannel() {
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Phát nhạc",
+                NotificationManager.IMPORTANCE_LOW);
+        channel.setShowBadge(false);
+        notificationManager.createNotificationChannel(channel);
+    }
+}
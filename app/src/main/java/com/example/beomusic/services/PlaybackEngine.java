@@ -0,0 +1,398 @@
+package com.example.beomusic.services;
+
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.beomusic.models.Song;
+import com.example.beomusic.repositories.AudioCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Plays a queue of songs with two MediaPlayers.
+ *
+ * While one track plays, the track that will follow it is prepared in a second player
+ * and chained with {@link MediaPlayer#setNextMediaPlayer}, so auto-advance is gapless
+ * and skipping to that track only swaps players instead of fetching and decoding from
+ * scratch. Any other jump falls back to a cold prepare.
+ *
+ * Must be created and used on a thread with a Looper (normally the main thread);
+ * listener callbacks are delivered there.
+ */
+public class PlaybackEngine {
+    private static final String TAG = "PlaybackEngine";
+
+    public interface Listener {
+        /**
+         * The engine moved on by itself after a track finished
+         * @param position New queue position
+         */
+        void onTrackAdvanced(int position);
+
+        /**
+         * A track is now playing
+         * @param position Queue position
+         * @param durationMs Track duration
+         */
+        void onTrackStarted(int position, int durationMs);
+
+        void onError(String message);
+    }
+
+    /**
+     * Decides which track follows the current one (repeat, shuffle...)
+     */
+    public interface QueuePolicy {
+        /**
+         * @param current Current queue position
+         * @param size Queue size
+         * @return Next position, or -1 to stop after the current track
+         */
+        int nextPosition(int current, int size);
+    }
+
+    /**
+     * Track-switch latency: from the switch request (or the end of the previous track)
+     * until the new track starts.
+     */
+    public static class SwitchStats {
+        private long switches;
+        private long prebuffered;
+        private long totalMs;
+        private long totalPrebufferedMs;
+        private long lastMs;
+
+        public long getSwitches() { return switches; }
+        public long getPrebufferedSwitches() { return prebuffered; }
+        public long getLastLatencyMs() { return lastMs; }
+
+        public long getAverageLatencyMs() {
+            return switches == 0 ? 0 : totalMs / switches;
+        }
+
+        public long getAverageColdLatencyMs() {
+            long cold = switches - prebuffered;
+            return cold == 0 ? 0 : (totalMs - totalPrebufferedMs) / cold;
+        }
+
+        public long getAveragePrebufferedLatencyMs() {
+            return prebuffered == 0 ? 0 : totalPrebufferedMs / prebuffered;
+        }
+
+        void record(long latencyMs, boolean wasPrebuffered) {
+            switches++;
+            totalMs += latencyMs;
+            lastMs = latencyMs;
+            if (wasPrebuffered) {
+                prebuffered++;
+                totalPrebufferedMs += latencyMs;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "switches=%d, prebuffered=%d, avg=%dms, avgCold=%dms, avgPrebuffered=%dms",
+                    switches, prebuffered, getAverageLatencyMs(), getAverageColdLatencyMs(),
+                    getAveragePrebufferedLatencyMs());
+        }
+    }
+
+    private static class Track {
+        final MediaPlayer player;
+        final int position;
+        boolean prepared;
+
+        Track(MediaPlayer player, int position) {
+            this.player = player;
+            this.position = position;
+        }
+    }
+
+    private final Listener listener;
+    private final SwitchStats stats = new SwitchStats();
+    private List<Song> queue = new ArrayList<>();
+    private QueuePolicy policy = (current, size) -> current + 1 < size ? current + 1 : -1;
+    private AudioCache audioCache;
+
+    private Track current;
+    private Track next;
+
+    private long switchStartedAt;
+    private boolean switchPrebuffered;
+    private boolean playWhenReady = true;
+
+    public PlaybackEngine(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replace the queue. Playback is not affected until {@link #play(int)} is called.
+     * @param songs Songs to play
+     */
+    public void setQueue(List<Song> songs) {
+        queue = new ArrayList<>(songs);
+        if (next != null) {
+            // Unchain it first, or the current track would hand off to a released player
+            if (current != null && current.prepared) {
+                current.player.setNextMediaPlayer(null);
+            }
+            releaseTrack(next);
+            next = null;
+        }
+    }
+
+    public void setQueuePolicy(QueuePolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Read tracks through a disk cache instead of streaming the URL directly
+     * @param audioCache Cache to use, or null to stream
+     */
+    public void setAudioCache(AudioCache audioCache) {
+        this.audioCache = audioCache;
+    }
+
+    /**
+     * Re-evaluate the following track, e.g. after repeat or shuffle was toggled
+     */
+    public void refreshNext() {
+        if (current != null && current.prepared) {
+            prepareNext();
+        }
+    }
+
+    /**
+     * Start playing the given queue position, reusing the pre-buffered player if it holds that track
+     * @param position Queue position
+     */
+    public void play(int position) {
+        if (position < 0 || position >= queue.size()) {
+            return;
+        }
+        switchStartedAt = SystemClock.elapsedRealtime();
+        playWhenReady = true;
+
+        if (next != null && next.position == position) {
+            switchPrebuffered = next.prepared;
+            Track old = current;
+            current = next;
+            next = null;
+            releaseTrack(old);
+            if (current.prepared) {
+                onCurrentReady();
+            }
+            return;
+        }
+
+        switchPrebuffered = false;
+        releaseTrack(current);
+        releaseTrack(next);
+        next = null;
+        current = createTrack(position);
+        if (current == null) {
+            listener.onError("Không thể phát bài hát này - không có đường dẫn file");
+        }
+    }
+
+    public void pause() {
+        playWhenReady = false;
+        if (current != null && current.prepared && current.player.isPlaying()) {
+            current.player.pause();
+        }
+    }
+
+    public void resume() {
+        playWhenReady = true;
+        if (current != null && current.prepared && !current.player.isPlaying()) {
+            current.player.start();
+        }
+    }
+
+    public boolean isPlaying() {
+        return current != null && current.prepared && current.player.isPlaying();
+    }
+
+    public boolean isPrepared() {
+        return current != null && current.prepared;
+    }
+
+    /**
+     * @return Whether playback should run: true from {@link #play(int)} or {@link #resume()}
+     *         until {@link #pause()}, including while a track is still buffering
+     */
+    public boolean getPlayWhenReady() {
+        return playWhenReady;
+    }
+
+    /**
+     * @return Queue position of the loaded track, or -1 if nothing is loaded
+     */
+    public int getCurrentIndex() {
+        return current != null ? current.position : -1;
+    }
+
+    public int getCurrentPosition() {
+        return isPrepared() ? current.player.getCurrentPosition() : 0;
+    }
+
+    public int getDuration() {
+        return isPrepared() ? current.player.getDuration() : 0;
+    }
+
+    public void seekTo(int ms) {
+        if (isPrepared()) {
+            current.player.seekTo(ms);
+        }
+    }
+
+    public SwitchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Release both players. The engine can be reused by calling {@link #play(int)} again.
+     */
+    public void release() {
+        releaseTrack(current);
+        releaseTrack(next);
+        current = null;
+        next = null;
+    }
+
+    private Track createTrack(int position) {
+        Song song = queue.get(position);
+        String url = song.getFilePath();
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+
+        MediaPlayer player = new MediaPlayer();
+        player.setAudioAttributes(new AudioAttributes.Builder()
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .build());
+        Track track = new Track(player, position);
+
+        player.setOnPreparedListener(mp -> onPrepared(track));
+        player.setOnCompletionListener(mp -> onCompletion(track));
+        player.setOnErrorListener((mp, what, extra) -> onPlayerError(track, what, extra));
+
+        CachedAudioDataSource dataSource = null;
+        try {
+            if (audioCache != null && audioCache.isEnabled()) {
+                dataSource = new CachedAudioDataSource(audioCache, url);
+                player.setDataSource(dataSource);
+            } else {
+                player.setDataSource(url);
+            }
+            player.prepareAsync();
+        } catch (Exception e) {
+            Log.e(TAG, "DataSource Error: " + e.getMessage());
+            player.release();
+            // The player may not have taken ownership, close the cache entry here
+            if (dataSource != null) {
+                dataSource.close();
+            }
+            return null;
+        }
+        return track;
+    }
+
+    private void onPrepared(Track track) {
+        track.prepared = true;
+        if (track == current) {
+            onCurrentReady();
+        } else if (track == next && current != null && current.prepared) {
+            current.player.setNextMediaPlayer(track.player);
+            Log.d(TAG, "Pre-buffered #" + track.position);
+        }
+    }
+
+    private void onCurrentReady() {
+        if (playWhenReady && !current.player.isPlaying()) {
+            current.player.start();
+        }
+        long latency = SystemClock.elapsedRealtime() - switchStartedAt;
+        stats.record(latency, switchPrebuffered);
+        Log.d(TAG, "Switched to #" + current.position + " in " + latency + "ms"
+                + (switchPrebuffered ? " (pre-buffered)" : "") + " | " + stats);
+
+        listener.onTrackStarted(current.position, current.player.getDuration());
+        prepareNext();
+    }
+
+    private void onCompletion(Track track) {
+        if (track != current) {
+            return;
+        }
+        switchStartedAt = SystemClock.elapsedRealtime();
+
+        if (next != null) {
+            // A prepared next player has already been started by MediaPlayer itself
+            switchPrebuffered = next.prepared;
+            current = next;
+            next = null;
+            releaseTrack(track);
+            listener.onTrackAdvanced(current.position);
+            if (current.prepared) {
+                onCurrentReady();
+            }
+            return;
+        }
+
+        int position = queue.isEmpty() ? -1 : policy.nextPosition(track.position, queue.size());
+        if (position < 0) {
+            playWhenReady = false;
+            return;
+        }
+        switchPrebuffered = false;
+        releaseTrack(track);
+        current = createTrack(position);
+        listener.onTrackAdvanced(position);
+        if (current == null) {
+            listener.onError("Không thể phát bài hát này - không có đường dẫn file");
+        }
+    }
+
+    private boolean onPlayerError(Track track, int what, int extra) {
+        Log.e(TAG, "Playback Error: what=" + what + ", extra=" + extra + ", track #" + track.position);
+        if (track == next) {
+            // Not fatal: the next switch just won't be pre-buffered
+            if (current != null && current.prepared) {
+                current.player.setNextMediaPlayer(null);
+            }
+            releaseTrack(next);
+            next = null;
+        } else if (track == current) {
+            listener.onError("Lỗi phát nhạc: " + what);
+        }
+        return true;
+    }
+
+    private void prepareNext() {
+        if (next != null) {
+            current.player.setNextMediaPlayer(null);
+            releaseTrack(next);
+            next = null;
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+        int position = policy.nextPosition(current.position, queue.size());
+        if (position < 0 || position >= queue.size()) {
+            return;
+        }
+        next = createTrack(position);
+    }
+
+    private void releaseTrack(Track track) {
+        if (track != null) {
+            track.player.release();
+        }
+    }
+}
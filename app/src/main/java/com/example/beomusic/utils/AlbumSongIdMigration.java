@@ -0,0 +1,189 @@
+package com.example.beomusic.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.beomusic.models.AlbumSong;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Chuyển các bản ghi album_songs cũ (id ngẫu nhiên) sang id cố định
+ * {@code AlbumSong.generateId(albumId, songId)}.
+ *
+ * Bản ghi trùng của cùng một bài hát được gộp lại và songCount của album được trừ đi
+ * tương ứng. Chạy được nhiều lần; mỗi người dùng chỉ cần chạy một lần.
+ */
+public class AlbumSongIdMigration {
+    private static final String TAG = "AlbumSongIdMigration";
+    private static final String PREF_NAME = "BeoMusicMigrations";
+    private static final String KEY_PREFIX = "album_song_ids_";
+    private static final int MAX_BATCH_WRITES = 500;
+
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+
+    public interface MigrationCallback {
+        void onSuccess(int migratedEntries);
+        void onError(String errorMessage);
+    }
+
+    /**
+     * Migrate the signed-in user's albums unless it was already done on this device
+     * @param context Any context
+     */
+    public static void runOnce(Context context) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            return;
+        }
+        SharedPreferences preferences = context.getApplicationContext()
+                .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        String key = KEY_PREFIX + user.getUid();
+        if (preferences.getBoolean(key, false)) {
+            return;
+        }
+
+        migrateUserAlbums(user.getUid(), new MigrationCallback() {
+            @Override
+            public void onSuccess(int migratedEntries) {
+                preferences.edit().putBoolean(key, true).apply();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                // Thử lại ở lần mở ứng dụng sau
+            }
+        });
+    }
+
+    /**
+     * Migrate every album owned by a user. Runs in the background; the callback is
+     * called from a background thread.
+     * @param userId ID của người dùng
+     * @param callback Callback for result
+     */
+    public static void migrateUserAlbums(String userId, MigrationCallback callback) {
+        executor.execute(() -> {
+            try {
+                FirebaseFirestore db = FirebaseFirestore.getInstance();
+                QuerySnapshot albums = Tasks.await(db.collection("albums")
+                        .whereEqualTo("userId", userId)
+                        .get());
+                int migrated = 0;
+                for (DocumentSnapshot album : albums.getDocuments()) {
+                    migrated += migrateAlbum(db, album.getId());
+                }
+                Log.d(TAG, "Migrated " + migrated + " entries in " + albums.size() + " albums");
+                callback.onSuccess(migrated);
+            } catch (Exception e) {
+                Log.e(TAG, "Migration failed: " + e.getMessage());
+                callback.onError("Lỗi khi chuyển dữ liệu album: " + e.getMessage());
+            }
+        });
+    }
+
+    private static int migrateAlbum(FirebaseFirestore db, String albumId) throws Exception {
+        QuerySnapshot entries = Tasks.await(db.collection("album_songs")
+                .whereEqualTo("albumId", albumId)
+                .get());
+
+        Map<String, List<DocumentSnapshot>> bySong = new LinkedHashMap<>();
+        for (DocumentSnapshot doc : entries.getDocuments()) {
+            String songId = doc.getString("songId");
+            if (songId == null) {
+                continue;
+            }
+            List<DocumentSnapshot> docs = bySong.get(songId);
+            if (docs == null) {
+                docs = new ArrayList<>();
+                bySong.put(songId, docs);
+            }
+            docs.add(doc);
+        }
+
+        List<WriteBatch> batches = new ArrayList<>();
+        WriteBatch batch = db.batch();
+        int writes = 0;
+        int migrated = 0;
+        int duplicates = 0;
+        for (Map.Entry<String, List<DocumentSnapshot>> song : bySong.entrySet()) {
+            String targetId = AlbumSong.generateId(albumId, song.getKey());
+            List<DocumentSnapshot> docs = song.getValue();
+            boolean hasTarget = false;
+            DocumentSnapshot oldest = null;
+            for (DocumentSnapshot doc : docs) {
+                if (doc.getId().equals(targetId)) {
+                    hasTarget = true;
+                } else if (oldest == null || isBefore(doc.getDate("addedDate"), oldest.getDate("addedDate"))) {
+                    oldest = doc;
+                }
+            }
+            if (oldest == null) {
+                continue;
+            }
+
+            // Leave room for a set plus one delete per copy in the same batch
+            if (writes + docs.size() + 1 > MAX_BATCH_WRITES) {
+                batches.add(batch);
+                batch = db.batch();
+                writes = 0;
+            }
+            if (!hasTarget) {
+                Map<String, Object> data = new LinkedHashMap<>(oldest.getData());
+                data.put("id", targetId);
+                batch.set(db.collection("album_songs").document(targetId), data);
+                writes++;
+            }
+            for (DocumentSnapshot doc : docs) {
+                if (!doc.getId().equals(targetId)) {
+                    batch.delete(doc.getReference());
+                    writes++;
+                    migrated++;
+                }
+            }
+            duplicates += docs.size() - 1;
+        }
+
+        if (duplicates > 0) {
+            if (writes + 1 > MAX_BATCH_WRITES) {
+                batches.add(batch);
+                batch = db.batch();
+                writes = 0;
+            }
+            DocumentReference albumRef = db.collection("albums").document(albumId);
+            batch.update(albumRef, "songCount", FieldValue.increment(-duplicates), "updatedDate", new Date());
+            writes++;
+        }
+        if (writes > 0) {
+            batches.add(batch);
+        }
+        for (WriteBatch pending : batches) {
+            Tasks.await(pending.commit());
+        }
+
+        if (migrated > 0) {
+            Log.d(TAG, "Album " + albumId + ": " + migrated + " entries moved, " + duplicates + " duplicates removed");
+        }
+        return migrated;
+    }
+
+    private static boolean isBefore(Date a, Date b) {
+        return a != null && (b == null || a.before(b));
+    }
+}
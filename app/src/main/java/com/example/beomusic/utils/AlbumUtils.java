@@ -57,7 +57,19 @@ public class AlbumUtils {
         AlbumSong albumSong = new AlbumSong(albumId, songId);
         return db.collection(ALBUM_SONGS_COLLECTION).document(albumSong.getId()).set(albumSong);
     }
-    
+
+    /**
+     * Thêm bài hát vào album kèm bản sao thông tin bài hát, để khi mở album không cần đọc "songs"
+     * @param userId ID của người dùng
+     * @param song Bài hát cần thêm
+     * @return Task trả về kết quả của thao tác thêm bài hát
+     */
+    public static Task<Void> addSongToAlbum(String userId, Song song) {
+        String albumId = Album.generateAlbumId(userId);
+        AlbumSong albumSong = new AlbumSong(albumId, song);
+        return db.collection(ALBUM_SONGS_COLLECTION).document(albumSong.getId()).set(albumSong);
+    }
+
     /**
      * Xóa bài hát khỏi album của người dùng
      * @param userId ID của người dùng
@@ -0,0 +1,205 @@
+package com.example.beomusic.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Loads values for a list of keys in fixed-size batches (e.g. Firestore whereIn queries).
+ *
+ * At most {@code maxConcurrent} batches are in flight, a failed batch is retried up to
+ * {@code maxAttempts} times, and results are always handed back in the order the keys
+ * were requested. A batch that keeps failing doesn't fail the whole load: its keys are
+ * reported in {@link Result#getFailedKeys()} and the rest is still delivered.
+ *
+ * Sources may call back on any thread; listener calls happen on the thread of the
+ * callback that triggered them.
+ */
+public class BatchFetcher<K, V> {
+
+    public interface Source<K, V> {
+        /**
+         * Load the values for one batch. Missing keys are simply left out of the result.
+         * Exactly one of the callback methods must be called, once.
+         */
+        void fetch(List<K> keys, BatchCallback<V> callback);
+    }
+
+    public interface BatchCallback<V> {
+        void onSuccess(List<V> values);
+        void onError(Exception e);
+    }
+
+    public interface Listener<K, V> {
+        /**
+         * Called whenever more of the leading part of the list has loaded
+         * @param loaded Values loaded so far, in requested order
+         * @param totalCount Number of distinct keys requested
+         */
+        default void onProgress(List<V> loaded, int totalCount) {}
+
+        void onComplete(Result<K, V> result);
+    }
+
+    public static class Result<K, V> {
+        private final List<V> values;
+        private final List<K> failedKeys;
+        private final Exception lastError;
+
+        Result(List<V> values, List<K> failedKeys, Exception lastError) {
+            this.values = values;
+            this.failedKeys = failedKeys;
+            this.lastError = lastError;
+        }
+
+        // Values found, in requested order
+        public List<V> getValues() { return values; }
+        // Keys whose batch failed on every attempt
+        public List<K> getFailedKeys() { return failedKeys; }
+        public Exception getLastError() { return lastError; }
+
+        public boolean isComplete() {
+            return failedKeys.isEmpty();
+        }
+    }
+
+    private final Source<K, V> source;
+    private final Function<V, K> keyOf;
+    private final int batchSize;
+    private final int maxConcurrent;
+    private final int maxAttempts;
+
+    /**
+     * @param source Loads one batch
+     * @param keyOf Extracts the key of a loaded value, used to restore the requested order
+     * @param batchSize Keys per batch
+     * @param maxConcurrent Batches in flight at once
+     * @param maxAttempts Tries per batch, including the first
+     */
+    public BatchFetcher(Source<K, V> source, Function<V, K> keyOf,
+                        int batchSize, int maxConcurrent, int maxAttempts) {
+        if (batchSize < 1 || maxConcurrent < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("batchSize, maxConcurrent and maxAttempts must be positive");
+        }
+        this.source = source;
+        this.keyOf = keyOf;
+        this.batchSize = batchSize;
+        this.maxConcurrent = maxConcurrent;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Load all keys. Duplicate keys are fetched once.
+     * @param keys Keys in the order the values should be returned
+     * @param listener Receives progress and the final result
+     */
+    public void fetch(List<K> keys, Listener<K, V> listener) {
+        new Run(new ArrayList<>(new LinkedHashSet<>(keys)), listener).start();
+    }
+
+    private class Run {
+        private final List<K> keys;
+        private final List<List<K>> batches = new ArrayList<>();
+        private final Listener<K, V> listener;
+        private final Map<Integer, List<V>> finished = new HashMap<>();
+        private final List<V> delivered = new ArrayList<>();
+        private final List<K> failedKeys = new ArrayList<>();
+        private Exception lastError;
+        private int nextToStart = 0;
+        private int nextToDeliver = 0;
+        private int running = 0;
+
+        Run(List<K> keys, Listener<K, V> listener) {
+            this.keys = keys;
+            this.listener = listener;
+            for (int i = 0; i < keys.size(); i += batchSize) {
+                batches.add(keys.subList(i, Math.min(i + batchSize, keys.size())));
+            }
+        }
+
+        synchronized void start() {
+            if (batches.isEmpty()) {
+                listener.onComplete(new Result<>(delivered, failedKeys, null));
+                return;
+            }
+            startMore();
+        }
+
+        private void startMore() {
+            while (running < maxConcurrent && nextToStart < batches.size()) {
+                running++;
+                attempt(nextToStart++, 1);
+            }
+        }
+
+        private void attempt(int index, int attemptNumber) {
+            source.fetch(batches.get(index), new BatchCallback<V>() {
+                private boolean called = false;
+
+                @Override
+                public void onSuccess(List<V> values) {
+                    synchronized (Run.this) {
+                        if (called) {
+                            return;
+                        }
+                        called = true;
+                        onBatchLoaded(index, values);
+                    }
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    synchronized (Run.this) {
+                        if (called) {
+                            return;
+                        }
+                        called = true;
+                        if (attemptNumber < maxAttempts) {
+                            attempt(index, attemptNumber + 1);
+                        } else {
+                            lastError = e;
+                            failedKeys.addAll(batches.get(index));
+                            onBatchLoaded(index, new ArrayList<>());
+                        }
+                    }
+                }
+            });
+        }
+
+        private void onBatchLoaded(int index, List<V> values) {
+            running--;
+
+            Map<K, V> byKey = new HashMap<>();
+            for (V value : values) {
+                byKey.put(keyOf.apply(value), value);
+            }
+            List<V> ordered = new ArrayList<>();
+            for (K key : batches.get(index)) {
+                V value = byKey.get(key);
+                if (value != null) {
+                    ordered.add(value);
+                }
+            }
+            finished.put(index, ordered);
+
+            boolean progressed = false;
+            while (finished.containsKey(nextToDeliver)) {
+                delivered.addAll(finished.remove(nextToDeliver));
+                nextToDeliver++;
+                progressed = true;
+            }
+
+            if (nextToDeliver == batches.size()) {
+                listener.onComplete(new Result<>(delivered, failedKeys, lastError));
+                return;
+            }
+            if (progressed) {
+                listener.onProgress(new ArrayList<>(delivered), keys.size());
+            }
+            startMore();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.beomusic.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a picked or captured photo into the fixed-size square WebP covers stored for an album.
+ *
+ * The source is decoded with inSampleSize so a 12MP camera photo never has to fit in memory
+ * at full resolution; each rendition is written to a file in the cache directory so it can
+ * be uploaded (and resumed) with putFile.
+ */
+public class CoverImageRenditions {
+
+    public enum Size {
+        // Album list rows
+        THUMBNAIL("thumb", 256),
+        // Album detail header
+        LARGE("large", 1024);
+
+        public final String suffix;
+        public final int pixels;
+
+        Size(String suffix, int pixels) {
+            this.suffix = suffix;
+            this.pixels = pixels;
+        }
+    }
+
+    public static class Rendition {
+        public final Size size;
+        public final File file;
+
+        Rendition(Size size, File file) {
+            this.size = size;
+            this.file = file;
+        }
+    }
+
+    public static final String CONTENT_TYPE = "image/webp";
+    private static final int QUALITY = 80;
+
+    private interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * @param context Any context
+     * @param source Content or file Uri of the picked image
+     * @param name Base file name, e.g. the album id
+     */
+    public static List<Rendition> create(Context context, Uri source, String name) throws IOException {
+        return create(context, () -> {
+            InputStream in = context.getContentResolver().openInputStream(source);
+            if (in == null) {
+                throw new IOException("Không đọc được ảnh: " + source);
+            }
+            return in;
+        }, name);
+    }
+
+    /**
+     * @param context Any context
+     * @param imageBytes Encoded image (JPEG, PNG...)
+     * @param name Base file name, e.g. the album id
+     */
+    public static List<Rendition> create(Context context, byte[] imageBytes, String name) throws IOException {
+        return create(context, () -> new ByteArrayInputStream(imageBytes), name);
+    }
+
+    /**
+     * @return File (and storage object) name of one rendition
+     */
+    public static String fileName(String name, Size size) {
+        return name + "_" + size.suffix + ".webp";
+    }
+
+    private static List<Rendition> create(Context context, StreamOpener opener, String name) throws IOException {
+        Bitmap square = decodeSquare(opener, Size.LARGE.pixels);
+        try {
+            File dir = new File(context.getCacheDir(), "cover_renditions");
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Không tạo được thư mục " + dir);
+            }
+
+            List<Rendition> renditions = new ArrayList<>();
+            for (Size size : Size.values()) {
+                int pixels = Math.min(size.pixels, square.getWidth());
+                Bitmap scaled = Bitmap.createScaledBitmap(square, pixels, pixels, true);
+                File file = new File(dir, fileName(name, size));
+                try (OutputStream out = new FileOutputStream(file)) {
+                    if (!scaled.compress(webpFormat(), QUALITY, out)) {
+                        throw new IOException("Không nén được ảnh " + size.suffix);
+                    }
+                } finally {
+                    if (scaled != square) {
+                        scaled.recycle();
+                    }
+                }
+                renditions.add(new Rendition(size, file));
+            }
+            return renditions;
+        } finally {
+            square.recycle();
+        }
+    }
+
+    /**
+     * Decode just enough pixels for the largest rendition, upright and center-cropped to a square
+     */
+    private static Bitmap decodeSquare(StreamOpener opener, int targetPixels) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = opener.open()) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Ảnh không hợp lệ");
+        }
+
+        // Largest power of two that keeps the short side at or above the target
+        int shortSide = Math.min(bounds.outWidth, bounds.outHeight);
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= targetPixels) {
+            sampleSize *= 2;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap decoded;
+        try (InputStream in = opener.open()) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Không giải mã được ảnh");
+        }
+
+        int rotation;
+        try (InputStream in = opener.open()) {
+            rotation = rotationDegrees(new ExifInterface(in));
+        }
+
+        int side = Math.min(decoded.getWidth(), decoded.getHeight());
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotation);
+        Bitmap square = Bitmap.createBitmap(decoded, (decoded.getWidth() - side) / 2,
+                (decoded.getHeight() - side) / 2, side, side, matrix, true);
+        if (square != decoded) {
+            decoded.recycle();
+        }
+        return square;
+    }
+
+    private static int rotationDegrees(ExifInterface exif) {
+        switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.beomusic.utils;
+
+import java.util.List;
+
+/**
+ * Walks an ordered query page by page with a cursor (Firestore startAfter + limit).
+ *
+ * Each page asks the source for exactly {@code pageSize} items after the last item of
+ * the previous page, so loading page N costs one page of reads no matter how long the
+ * list is. A page shorter than {@code pageSize} marks the end.
+ *
+ * Not thread-safe: call it from one thread (the main thread for UI code).
+ */
+public class CursorPager<T, C> {
+
+    public interface PageSource<T, C> {
+        /**
+         * @param after Cursor returned with the previous page, or null for the first page
+         * @param limit Maximum number of items to return
+         */
+        void load(C after, int limit, PageCallback<T, C> callback);
+    }
+
+    public interface PageCallback<T, C> {
+        /**
+         * @param items Items in query order
+         * @param cursor Position of the last item, passed back for the next page
+         */
+        void onSuccess(List<T> items, C cursor);
+        void onError(Exception e);
+    }
+
+    public interface Listener<T> {
+        /**
+         * @param items Items of the page just loaded
+         * @param firstPage true when the list was (re)started from the top
+         */
+        void onPageLoaded(List<T> items, boolean firstPage);
+        void onError(Exception e);
+    }
+
+    private final PageSource<T, C> source;
+    private final int pageSize;
+    private final Listener<T> listener;
+
+    private C cursor;
+    private boolean hasMore = true;
+    private boolean loading = false;
+    // Bumped by refresh() so a page from the previous pass is dropped
+    private int generation = 0;
+
+    public CursorPager(PageSource<T, C> source, int pageSize, Listener<T> listener) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Start over from the first page
+     */
+    public void refresh() {
+        generation++;
+        cursor = null;
+        hasMore = true;
+        loading = false;
+        load(true);
+    }
+
+    /**
+     * Load the page after the last one, unless a load is running or the end was reached
+     */
+    public void loadNext() {
+        if (loading || !hasMore) {
+            return;
+        }
+        load(cursor == null);
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    private void load(boolean firstPage) {
+        int loadGeneration = generation;
+        loading = true;
+        source.load(firstPage ? null : cursor, pageSize, new PageCallback<T, C>() {
+            @Override
+            public void onSuccess(List<T> items, C newCursor) {
+                if (loadGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                if (!items.isEmpty()) {
+                    cursor = newCursor;
+                }
+                hasMore = items.size() >= pageSize;
+                listener.onPageLoaded(items, firstPage);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (loadGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                listener.onError(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.beomusic.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.beomusic.repositories.SearchCache;
+
+/**
+ * Turns raw search-box keystrokes into a small number of queries.
+ *
+ * Text goes through: normalize -> minimum length -> debounce (with a max wait so
+ * continuous typing still emits periodically) -> distinct-until-changed.
+ * Must be used from the main thread.
+ */
+public class SearchQueryPipeline {
+
+    public interface Listener {
+        void onQuery(String query);
+    }
+
+    private final long debounceMs;
+    private final long maxWaitMs;
+    private final int minLength;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private Runnable pending;
+    private long pendingSince = -1;
+    private String lastEmitted;
+
+    private long keystrokes = 0;
+    private long emitted = 0;
+
+    /**
+     * @param debounceMs Quiet period after the last keystroke before emitting
+     * @param maxWaitMs Longest time a change may wait while the user keeps typing
+     * @param minLength Shorter queries are dropped
+     * @param listener Receives normalized queries
+     */
+    public SearchQueryPipeline(long debounceMs, long maxWaitMs, int minLength, Listener listener) {
+        this.debounceMs = debounceMs;
+        this.maxWaitMs = maxWaitMs;
+        this.minLength = minLength;
+        this.listener = listener;
+    }
+
+    /**
+     * Feed the current text of the search box
+     * @param text Raw text
+     */
+    public void onTextChanged(String text) {
+        keystrokes++;
+        String query = SearchCache.normalize(text);
+        cancelPending();
+        if (query.length() < minLength) {
+            // The next valid keystroke starts a new debounce window
+            pendingSince = -1;
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        if (pendingSince < 0) {
+            pendingSince = now;
+        }
+        pending = () -> emit(query);
+        long delay = Math.min(debounceMs, Math.max(0, pendingSince + maxWaitMs - now));
+        handler.postDelayed(pending, delay);
+    }
+
+    /**
+     * Emit immediately, e.g. when the user presses the search key
+     * @param text Raw text
+     */
+    public void submit(String text) {
+        String query = SearchCache.normalize(text);
+        cancelPending();
+        if (query.length() >= minLength) {
+            emit(query);
+        }
+    }
+
+    /**
+     * Forget the last emitted query so the same text can be searched again
+     */
+    public void reset() {
+        cancelPending();
+        lastEmitted = null;
+    }
+
+    public long getKeystrokeCount() { return keystrokes; }
+    public long getEmittedCount() { return emitted; }
+
+    private void emit(String query) {
+        pending = null;
+        pendingSince = -1;
+        if (query.equals(lastEmitted)) {
+            return;
+        }
+        lastEmitted = query;
+        emitted++;
+        listener.onQuery(query);
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            handler.removeCallbacks(pending);
+            pending = null;
+        }
+    }
+}
@@ -3,12 +3,19 @@ package com.example.beomusic.views;
 import android.annotation.SuppressLint;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.PopupMenu;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -17,6 +24,8 @@ import com.example.beomusic.BottomNavigation.BaseActivity;
 import com.example.beomusic.R;
 import com.example.beomusic.adapters.SongAdapter;
 import com.example.beomusic.models.Song;
+import com.example.beomusic.repositories.PlaylistStore;
+import com.example.beomusic.utils.AlbumSongIdMigration;
 import com.example.beomusic.ViewModel.HomeViewModel;
 import com.example.beomusic.views.album.SongDetailActivity;
 import com.google.android.material.tabs.TabLayout;
@@ -29,6 +38,7 @@ public class HomeActivity extends BaseActivity implements SongAdapter.OnSongClic
     private RecyclerView recyclerSongs;
     private ProgressBar progressBar;
     private ImageButton btnSearch;
+    private EditText etSearch;
     private TabLayout tabLayout;
 
     // ViewModel & Adapter
@@ -64,7 +74,10 @@ public class HomeActivity extends BaseActivity implements SongAdapter.OnSongClic
         setupSearchButton();
 
         // ⭐ Tải bài hát mặc định ("popular")
-        viewModel.searchSongs("popular");
+        viewModel.searchCategory("popular");
+
+        // ⭐ Chuyển id album_songs cũ sang id cố định (chỉ chạy một lần)
+        AlbumSongIdMigration.runOnce(this);
     }
 
     // 📌 Khởi tạo view
@@ -72,6 +85,7 @@ public class HomeActivity extends BaseActivity implements SongAdapter.OnSongClic
         recyclerSongs = findViewById(R.id.recyclerSongs);
         progressBar = findViewById(R.id.progressBar);
         btnSearch = findViewById(R.id.btnSearch);
+        etSearch = findViewById(R.id.etSearch);
         tabLayout = findViewById(R.id.tabLayout);
     }
 
@@ -80,6 +94,20 @@ public class HomeActivity extends BaseActivity implements SongAdapter.OnSongClic
         recyclerSongs.setLayoutManager(new LinearLayoutManager(this));
         adapter = new SongAdapter(this, this); // this = context, this = click listener
         recyclerSongs.setAdapter(adapter);
+
+        // Tải thêm trang khi cuộn gần cuối (hoặc đầu) danh sách
+        recyclerSongs.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                super.onScrolled(recyclerView, dx, dy);
+
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager != null) {
+                    viewModel.onListScrolled(layoutManager.findFirstVisibleItemPosition(),
+                            layoutManager.findLastVisibleItemPosition());
+                }
+            }
+        });
     }
 
     // 📌 Setup ViewModel và observe dữ liệu
@@ -108,13 +136,13 @@ public class HomeActivity extends BaseActivity implements SongAdapter.OnSongClic
             public void onTabSelected(TabLayout.Tab tab) {
                 switch (tab.getPosition()) {
                     case 0:
-                        viewModel.searchSongs("popular");
+                        viewModel.searchCategory("popular");
                         break;
                     case 1:
-                        viewModel.searchSongs("top");
+                        viewModel.searchCategory("top");
                         break;
                     case 2:
-                        viewModel.searchSongs("new release");
+                        viewModel.searchCategory("new release");
                         break;
                 }
             }
@@ -124,9 +152,38 @@ public class HomeActivity extends BaseActivity implements SongAdapter.OnSongClic
         });
     }
 
-    // 📌 Xử lý khi bấm nút tìm kiếm
+    // 📌 Xử lý khi bấm nút tìm kiếm: hiện/ẩn ô tìm kiếm
     private void setupSearchButton() {
-        btnSearch.setOnClickListener(v -> viewModel.searchSongs("Alan Walker"));
+        btnSearch.setOnClickListener(v -> {
+            InputMethodManager imm = (InputMethodManager) getSystemService(INPUT_METHOD_SERVICE);
+            if (etSearch.getVisibility() == View.VISIBLE) {
+                etSearch.setVisibility(View.GONE);
+                imm.hideSoftInputFromWindow(etSearch.getWindowToken(), 0);
+            } else {
+                etSearch.setVisibility(View.VISIBLE);
+                etSearch.requestFocus();
+                imm.showSoftInput(etSearch, InputMethodManager.SHOW_IMPLICIT);
+            }
+        });
+
+        // Mỗi lần gõ phím đi qua pipeline (debounce) trong ViewModel, không gọi API trực tiếp
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.onSearchTextChanged(s.toString());
+            }
+        });
+
+        etSearch.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                viewModel.submitSearch(v.getText().toString());
+                return true;
+            }
+            return false;
+        });
     }
 
     // 📌 Khi click vào 1 bài hát
@@ -145,7 +202,7 @@ public class HomeActivity extends BaseActivity implements SongAdapter.OnSongClic
         intent.putExtra("preview_url", song.getFilePath());
         intent.putExtra("genre", song.getGenre());
 
-        // Truyền danh sách bài hát hiện tại
+        // Truyền danh sách bài hát hiện tại qua PlaylistStore, Intent chỉ mang id
         ArrayList<Song> songList = new ArrayList<>(adapter.getSongs());
         // Đảm bảo các bài hát có đầy đủ thông tin để có thể lưu vào firebase
         for (Song s : songList) {
@@ -153,8 +210,9 @@ public class HomeActivity extends BaseActivity implements SongAdapter.OnSongClic
                 s.setSongId(s.getId()); // Đảm bảo songId không rỗng
             }
         }
-        intent.putExtra("song_list", songList);
+        intent.putExtra(PlaylistStore.EXTRA_PLAYLIST_ID, PlaylistStore.getInstance().put(songList));
         intent.putExtra("current_position", adapter.getSongs().indexOf(song));
+        intent.putExtra(PlaylistStore.EXTRA_LAUNCH_TIME, SystemClock.elapsedRealtime());
 
         startActivity(intent);
     }
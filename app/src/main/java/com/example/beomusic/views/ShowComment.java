@@ -11,6 +11,7 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -21,11 +22,15 @@ import com.bumptech.glide.Glide;
 import com.example.beomusic.R;
 import com.example.beomusic.adapters.CommentAdapter;
 import com.example.beomusic.models.Comment;
+import com.example.beomusic.repositories.CommentOutbox;
 import com.example.beomusic.repositories.CommentRepository;
+import com.example.beomusic.utils.CursorPager;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
 
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ShowComment extends AppCompatActivity {
@@ -48,9 +53,37 @@ public class ShowComment extends AppCompatActivity {
     private CommentRepository commentRepository;
     private String songId;
     private String songTitle;
-    private boolean isLoading = false;
-    private Date lastCommentTimestamp = null;
-    private boolean hasMoreComments = true;
+    // Loads comments newest first, one page of reads per page
+    private CursorPager<Comment, DocumentSnapshot> commentPager;
+    // Live updates for the newest page while the screen is visible
+    private ListenerRegistration liveComments;
+    // Posted comments waiting for the server
+    private CommentOutbox commentOutbox;
+    private final CommentOutbox.Listener outboxListener = new CommentOutbox.Listener() {
+        @Override
+        public void onCommentSent(Comment comment) {
+            if (songId.equals(comment.getSongId())) {
+                commentAdapter.upsertComment(comment);
+            }
+        }
+
+        @Override
+        public void onCommentFailed(Comment comment, String errorMessage) {
+            if (!songId.equals(comment.getSongId())) {
+                return;
+            }
+            Log.e(TAG, "outboxListener.onCommentFailed: " + errorMessage);
+            commentAdapter.removeComment(comment.getCommentId());
+            if (commentAdapter.getItemCount() == 0) {
+                tvEmptyComments.setVisibility(View.VISIBLE);
+            }
+            // Give the text back so it can be edited and sent again
+            if (etCommentInput.getText().toString().trim().isEmpty()) {
+                etCommentInput.setText(comment.getContent());
+            }
+            Toast.makeText(ShowComment.this, errorMessage, Toast.LENGTH_SHORT).show();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -99,6 +132,19 @@ public class ShowComment extends AppCompatActivity {
         
         // Initialize repository
         commentRepository = new CommentRepository(this);
+        commentOutbox = CommentOutbox.getInstance(this);
+        commentPager = new CursorPager<>(commentRepository.commentPages(songId), COMMENTS_PER_PAGE,
+                new CursorPager.Listener<Comment>() {
+                    @Override
+                    public void onPageLoaded(List<Comment> comments, boolean firstPage) {
+                        onCommentsLoaded(comments, firstPage);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        onCommentsFailed(e.getMessage());
+                    }
+                });
         Log.d(TAG, "initializeViews: CommentRepository initialized");
     }
 
@@ -121,6 +167,7 @@ public class ShowComment extends AppCompatActivity {
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         rvComments.setLayoutManager(layoutManager);
         rvComments.setAdapter(commentAdapter);
+        commentAdapter.setOnCommentLongClickListener(this::confirmDeleteComment);
         Log.d(TAG, "setupRecyclerView: RecyclerView setup complete");
         
         // Pagination listener
@@ -134,7 +181,7 @@ public class ShowComment extends AppCompatActivity {
                     int totalItemCount = layoutManager.getItemCount();
                     int lastVisibleItem = layoutManager.findLastVisibleItemPosition();
                     
-                    if (!isLoading && hasMoreComments && totalItemCount <= (lastVisibleItem + 5)) {
+                    if (!commentPager.isLoading() && commentPager.hasMore() && totalItemCount <= (lastVisibleItem + 5)) {
                         // Load more comments when user is near the end of the list
                         Log.d(TAG, "onScrolled: Near end of list, loading more comments");
                         loadMoreComments();
@@ -162,108 +209,113 @@ public class ShowComment extends AppCompatActivity {
         });
     }
 
-    private void loadComments() {
-        if (isLoading) {
-            Log.d(TAG, "loadComments: Already loading, skipping");
+    @Override
+    protected void onStart() {
+        super.onStart();
+        startLiveComments();
+        commentOutbox.addListener(outboxListener);
+        showPendingComments();
+        commentOutbox.flush();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        commentOutbox.removeListener(outboxListener);
+        if (liveComments != null) {
+            liveComments.remove();
+            liveComments = null;
+        }
+    }
+
+    private void startLiveComments() {
+        if (liveComments != null) {
             return;
         }
-        
-        Log.d(TAG, "loadComments: Loading comments for song ID: " + songId);
-        isLoading = true;
-        progressBar.setVisibility(View.VISIBLE);
-        tvEmptyComments.setVisibility(View.GONE);
-        
-        commentRepository.getComments(songId, COMMENTS_PER_PAGE, new CommentRepository.CommentCallback() {
-            @Override
-            public void onSuccess(List<Comment> comments) {
-                Log.d(TAG, "loadComments.onSuccess: Received " + comments.size() + " comments");
-                runOnUiThread(() -> {
-                    progressBar.setVisibility(View.GONE);
-                    swipeRefreshLayout.setRefreshing(false);
-                    isLoading = false;
-                    
-                    commentAdapter.setComments(comments);
-                    
-                    if (comments.isEmpty()) {
-                        Log.d(TAG, "loadComments.onSuccess: No comments found");
-                        tvEmptyComments.setVisibility(View.VISIBLE);
-                        hasMoreComments = false;
-                    } else {
+        liveComments = commentRepository.listenToNewestComments(songId, COMMENTS_PER_PAGE,
+                new CommentRepository.CommentChangeListener() {
+                    @Override
+                    public void onCommentAdded(Comment comment) {
+                        commentAdapter.upsertComment(comment);
                         tvEmptyComments.setVisibility(View.GONE);
-                        // Store the timestamp of the last comment for pagination
-                        lastCommentTimestamp = comments.get(comments.size() - 1).getTimestamp();
-                        hasMoreComments = comments.size() == COMMENTS_PER_PAGE;
-                        Log.d(TAG, "loadComments.onSuccess: Last comment timestamp: " + lastCommentTimestamp);
-                        Log.d(TAG, "loadComments.onSuccess: hasMoreComments = " + hasMoreComments);
                     }
-                });
-            }
 
-            @Override
-            public void onError(String errorMessage) {
-                Log.e(TAG, "loadComments.onError: " + errorMessage);
-                runOnUiThread(() -> {
-                    progressBar.setVisibility(View.GONE);
-                    swipeRefreshLayout.setRefreshing(false);
-                    isLoading = false;
-                    Toast.makeText(ShowComment.this, errorMessage, Toast.LENGTH_SHORT).show();
-                    tvEmptyComments.setVisibility(View.VISIBLE);
+                    @Override
+                    public void onCommentModified(Comment comment) {
+                        commentAdapter.upsertComment(comment);
+                    }
+
+                    @Override
+                    public void onCommentRemoved(String commentId) {
+                        commentAdapter.removeComment(commentId);
+                        if (commentAdapter.getItemCount() == 0) {
+                            tvEmptyComments.setVisibility(View.VISIBLE);
+                        }
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        Log.e(TAG, "liveComments.onError: " + errorMessage);
+                    }
                 });
-            }
-        });
     }
 
-    private void loadMoreComments() {
-        if (isLoading || !hasMoreComments || lastCommentTimestamp == null) {
-            Log.d(TAG, "loadMoreComments: Skipping. isLoading=" + isLoading + ", hasMoreComments=" + hasMoreComments + 
-                  ", lastCommentTimestamp=" + (lastCommentTimestamp != null ? "not null" : "null"));
+    private void showPendingComments() {
+        List<Comment> pending = commentOutbox.getPending(songId);
+        for (Comment comment : pending) {
+            commentAdapter.upsertComment(comment);
+        }
+        if (!pending.isEmpty()) {
+            tvEmptyComments.setVisibility(View.GONE);
+        }
+    }
+
+    private void loadComments() {
+        if (commentPager.isLoading()) {
+            Log.d(TAG, "loadComments: Already loading, skipping");
             return;
         }
         
-        Log.d(TAG, "loadMoreComments: Loading more comments starting after: " + lastCommentTimestamp);
-        isLoading = true;
+        Log.d(TAG, "loadComments: Loading comments for song ID: " + songId);
+        progressBar.setVisibility(View.VISIBLE);
+        tvEmptyComments.setVisibility(View.GONE);
+        commentPager.refresh();
+    }
+
+    private void loadMoreComments() {
+        Log.d(TAG, "loadMoreComments: Loading next page, hasMore=" + commentPager.hasMore());
+        commentPager.loadNext();
+    }
+
+    private void onCommentsLoaded(List<Comment> comments, boolean firstPage) {
+        Log.d(TAG, "onCommentsLoaded: Received " + comments.size() + " comments, first page: " + firstPage);
+        progressBar.setVisibility(View.GONE);
+        swipeRefreshLayout.setRefreshing(false);
         
-        commentRepository.getMoreComments(songId, lastCommentTimestamp, COMMENTS_PER_PAGE, new CommentRepository.CommentCallback() {
-            @Override
-            public void onSuccess(List<Comment> comments) {
-                Log.d(TAG, "loadMoreComments.onSuccess: Received " + comments.size() + " more comments");
-                runOnUiThread(() -> {
-                    isLoading = false;
-                    
-                    if (comments.isEmpty()) {
-                        // No more comments to load
-                        Log.d(TAG, "loadMoreComments.onSuccess: No more comments available");
-                        hasMoreComments = false;
-                    } else {
-                        commentAdapter.addComments(comments);
-                        // Update last comment timestamp for next pagination
-                        lastCommentTimestamp = comments.get(comments.size() - 1).getTimestamp();
-                        hasMoreComments = comments.size() == COMMENTS_PER_PAGE;
-                        Log.d(TAG, "loadMoreComments.onSuccess: Updated last comment timestamp: " + lastCommentTimestamp);
-                        Log.d(TAG, "loadMoreComments.onSuccess: hasMoreComments = " + hasMoreComments);
-                    }
-                });
-            }
+        if (firstPage) {
+            commentAdapter.setComments(new ArrayList<>(comments));
+            tvEmptyComments.setVisibility(comments.isEmpty() ? View.VISIBLE : View.GONE);
+            // Unsent comments aren't on the server yet
+            showPendingComments();
+        } else if (!comments.isEmpty()) {
+            commentAdapter.addComments(comments);
+        }
+    }
 
-            @Override
-            public void onError(String errorMessage) {
-                Log.e(TAG, "loadMoreComments.onError: " + errorMessage);
-                runOnUiThread(() -> {
-                    isLoading = false;
-                    Toast.makeText(ShowComment.this, errorMessage, Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
+    private void onCommentsFailed(String errorMessage) {
+        Log.e(TAG, "onCommentsFailed: " + errorMessage);
+        progressBar.setVisibility(View.GONE);
+        swipeRefreshLayout.setRefreshing(false);
+        Toast.makeText(ShowComment.this, "Lỗi khi tải bình luận: " + errorMessage, Toast.LENGTH_SHORT).show();
+        if (commentAdapter.getItemCount() == 0) {
+            tvEmptyComments.setVisibility(View.VISIBLE);
+        }
     }
 
     private void refreshComments() {
         Log.d(TAG, "refreshComments: Refreshing comments list");
-        // Reset pagination state
-        lastCommentTimestamp = null;
-        hasMoreComments = true;
-        
         // Load comments from the beginning
-        loadComments();
+        commentPager.refresh();
     }
 
     private void postComment(String content) {
@@ -276,45 +328,71 @@ public class ShowComment extends AppCompatActivity {
         }
         
         Log.d(TAG, "postComment: Posting comment for user: " + currentUser.getUid() + ", song: " + songId);
-        // Show progress
-        progressBar.setVisibility(View.VISIBLE);
         btnSendComment.setEnabled(false);
         
-        // Add comment to database
+        // Shown right away as pending; the outbox listener confirms or rolls it back
         commentRepository.addComment(songId, content, new CommentRepository.SingleCommentCallback() {
             @Override
             public void onSuccess(Comment comment) {
-                Log.d(TAG, "postComment.onSuccess: Comment added successfully with ID: " + comment.getCommentId());
-                runOnUiThread(() -> {
-                    progressBar.setVisibility(View.GONE);
-                    btnSendComment.setEnabled(true);
-                    
-                    // Clear input
-                    etCommentInput.setText("");
-                    
-                    // Add comment to adapter
-                    commentAdapter.addComment(comment);
-                    
-                    // Scroll to top to see the new comment
-                    rvComments.smoothScrollToPosition(0);
-                    
-                    // Hide empty view if visible
-                    tvEmptyComments.setVisibility(View.GONE);
-                });
+                Log.d(TAG, "postComment.onSuccess: Comment queued with ID: " + comment.getCommentId());
+                btnSendComment.setEnabled(true);
+                
+                // Clear input
+                etCommentInput.setText("");
+                
+                // Add comment to adapter (the live listener may have added it already)
+                commentAdapter.upsertComment(comment);
+                
+                // Scroll to top to see the new comment
+                rvComments.smoothScrollToPosition(0);
+                
+                // Hide empty view if visible
+                tvEmptyComments.setVisibility(View.GONE);
             }
 
             @Override
             public void onError(String errorMessage) {
                 Log.e(TAG, "postComment.onError: " + errorMessage);
-                runOnUiThread(() -> {
-                    progressBar.setVisibility(View.GONE);
-                    btnSendComment.setEnabled(true);
-                    Toast.makeText(ShowComment.this, errorMessage, Toast.LENGTH_SHORT).show();
-                });
+                btnSendComment.setEnabled(true);
+                Toast.makeText(ShowComment.this, errorMessage, Toast.LENGTH_SHORT).show();
             }
         });
     }
 
+    private void confirmDeleteComment(Comment comment) {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        // Only your own comments, and only once the server has them
+        if (currentUser == null || comment.isPending() || !currentUser.getUid().equals(comment.getUserId())) {
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Xóa bình luận")
+                .setMessage("Bạn có chắc muốn xóa bình luận này?")
+                .setPositiveButton("Xóa", (dialog, which) -> deleteComment(comment))
+                .setNegativeButton("Hủy", null)
+                .show();
+    }
+
+    private void deleteComment(Comment comment) {
+        Log.d(TAG, "deleteComment: Deleting comment ID: " + comment.getCommentId());
+        // Removed right away, put back if the server refuses
+        Comment removed = commentAdapter.removeComment(comment.getCommentId());
+        if (commentAdapter.getItemCount() == 0) {
+            tvEmptyComments.setVisibility(View.VISIBLE);
+        }
+
+        commentRepository.deleteComment(comment,
+                aVoid -> Log.d(TAG, "deleteComment: Comment deleted"),
+                e -> {
+                    Log.e(TAG, "deleteComment: Rolling back", e);
+                    if (removed != null) {
+                        commentAdapter.upsertComment(removed);
+                        tvEmptyComments.setVisibility(View.GONE);
+                    }
+                    Toast.makeText(ShowComment.this, "Lỗi khi xóa bình luận: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                });
+    }
+
     private void loadCurrentUserAvatar() {
         Log.d(TAG, "loadCurrentUserAvatar: Loading current user avatar");
         FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
@@ -3,6 +3,7 @@ package com.example.beomusic.views.album;
 import android.annotation.SuppressLint;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageButton;
@@ -20,10 +21,10 @@ import com.example.beomusic.R;
 import com.example.beomusic.adapters.SongAdapter;
 import com.example.beomusic.models.Song;
 import com.example.beomusic.repositories.FavoriteRepository;
+import com.example.beomusic.repositories.PlaylistStore;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class AlbumListActivity extends BaseActivity implements SongAdapter.OnSongClickListener {
@@ -110,6 +111,16 @@ public class AlbumListActivity extends BaseActivity implements SongAdapter.OnSon
         Log.d("AlbumListActivity", "Loading favorites for user: " + userId);
         
         favoriteRepository.getFavoriteSongs(new FavoriteRepository.FavoritesCallback() {
+            @Override
+            public void onProgress(List<Song> loadedSongs, int totalCount) {
+                // Hiện phần đầu danh sách trong khi phần còn lại đang tải
+                runOnUiThread(() -> {
+                    tvNoFavorites.setVisibility(View.GONE);
+                    adapter.setSongs(loadedSongs);
+                    Log.d("AlbumListActivity", "Loaded " + loadedSongs.size() + "/" + totalCount + " favorite songs");
+                });
+            }
+
             @Override
             public void onSuccess(List<Song> favoriteSongs) {
                 runOnUiThread(() -> {
@@ -121,15 +132,6 @@ public class AlbumListActivity extends BaseActivity implements SongAdapter.OnSon
                         tvNoFavorites.setText("Bạn chưa có bài hát yêu thích nào");
                         tvNoFavorites.setVisibility(View.VISIBLE);
                     } else {
-                        for (Song song : favoriteSongs) {
-                            Log.d("AlbumListActivity", String.format(
-                                "Song loaded - Title: %s, ID: %s, Preview URL: %s",
-                                song.getTitle(),
-                                song.getSongId(),
-                                song.getFilePath()
-                            ));
-                        }
-                        
                         tvNoFavorites.setVisibility(View.GONE);
                         adapter.setSongs(favoriteSongs);
                     }
@@ -166,9 +168,9 @@ public class AlbumListActivity extends BaseActivity implements SongAdapter.OnSon
         intent.putExtra("artist", song.getArtist());
         intent.putExtra("preview_url", song.getFilePath());
         
-        ArrayList<Song> songList = new ArrayList<>(adapter.getSongs());
-        intent.putExtra("song_list", songList);
+        intent.putExtra(PlaylistStore.EXTRA_PLAYLIST_ID, PlaylistStore.getInstance().put(adapter.getSongs()));
         intent.putExtra("current_position", adapter.getSongs().indexOf(song));
+        intent.putExtra(PlaylistStore.EXTRA_LAUNCH_TIME, SystemClock.elapsedRealtime());
         
         startActivity(intent);
     }
@@ -1,11 +1,16 @@
 package com.example.beomusic.views.album;
 
+import android.Manifest;
+import android.content.ComponentName;
 import android.content.Intent;
-import android.media.AudioAttributes;
-import android.media.MediaPlayer;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageButton;
@@ -15,6 +20,8 @@ import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
@@ -23,13 +30,15 @@ import androidx.core.content.ContextCompat;
 import com.bumptech.glide.Glide;
 import com.example.beomusic.R;
 import com.example.beomusic.models.Song;
+import com.example.beomusic.repositories.FavoriteIdsCache;
 import com.example.beomusic.repositories.FavoriteRepository;
+import com.example.beomusic.repositories.PlaylistStore;
+import com.example.beomusic.services.MusicPlaybackService;
 import com.example.beomusic.views.HomeActivity;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 public class SongDetailActivity extends AppCompatActivity {
@@ -44,7 +53,11 @@ public class SongDetailActivity extends AppCompatActivity {
     private ImageView ivAlbumArt;
 
     // Media Components
-    private MediaPlayer mediaPlayer;
+    private MusicPlaybackService playbackService;
+    private boolean serviceBound = false;
+    // bindService was called; it must be undone even if onServiceConnected never ran
+    private boolean bindRequested = false;
+    private ServiceConnection serviceConnection;
     private Handler handler = new Handler(Looper.getMainLooper());
     private Runnable updateSeekBar;
 
@@ -70,11 +83,140 @@ public class SongDetailActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_song_detail);
         setupInsets();
-        favoriteRepository = new FavoriteRepository();
+        favoriteRepository = new FavoriteRepository(this);
+        favoriteRepository.getFavoriteIds().addListener(favoritesListener);
         getIntentData();
+        logStartupTime(savedInstanceState);
         bindViews();
         setControlListeners();
-        loadSongFromList(currentPosition);
+        initSeekBarUpdater();
+
+        // Khi xoay màn hình, service vẫn đang phát: chỉ đồng bộ lại UI, không phát lại từ đầu
+        boolean restoring = savedInstanceState != null;
+        serviceConnection = new PlaybackConnection(restoring);
+        Intent serviceIntent = new Intent(this, MusicPlaybackService.class);
+        // Started as well as bound, so it survives this activity being recreated
+        startService(serviceIntent);
+        bindRequested = bindService(serviceIntent, serviceConnection, BIND_AUTO_CREATE);
+
+        requestNotificationPermission();
+    }
+
+    // Android 13+: without it the playback notification and its controls are hidden
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            notificationPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
+        }
+    }
+
+    private final ActivityResultLauncher<String> notificationPermissionLauncher =
+            registerForActivityResult(new ActivityResultContracts.RequestPermission(),
+                    granted -> Log.d(TAG, "POST_NOTIFICATIONS granted: " + granted));
+
+    // === Playback Service ===
+    private class PlaybackConnection implements ServiceConnection {
+        private final boolean restoring;
+
+        PlaybackConnection(boolean restoring) {
+            this.restoring = restoring;
+        }
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            playbackService = ((MusicPlaybackService.LocalBinder) binder).getService();
+            serviceBound = true;
+            playbackService.addListener(playbackListener);
+
+            // A restored screen keeps what the service plays, unless the service was
+            // recreated in between and lost its queue
+            if (songList != null && (!restoring || playbackService.getCurrentSong() == null)) {
+                playbackService.playQueue(songList, currentPosition);
+            }
+            syncFromService();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            playbackService = null;
+            serviceBound = false;
+        }
+    }
+
+    private final MusicPlaybackService.PlaybackListener playbackListener = new MusicPlaybackService.PlaybackListener() {
+        @Override
+        public void onTrackChanged(int position, Song song) {
+            currentPosition = position;
+            handler.removeCallbacks(updateSeekBar);
+            bindSongData(song);
+            btnPlayPause.setEnabled(false);
+
+            // Debug logs
+            Log.d(TAG, "Loading song: " + song.getTitle());
+            Log.d(TAG, "Song ID: " + song.getSongId());
+            Log.d(TAG, "File path: " + song.getFilePath());
+
+            checkFavoriteStatus(song);
+        }
+
+        @Override
+        public void onTrackStarted(int position, int durationMs) {
+            seekBar.setMax(durationMs);
+            tvTotalTime.setText(formatDuration(durationMs / 1000));
+            btnPlayPause.setEnabled(true);
+        }
+
+        @Override
+        public void onPlayStateChanged(boolean playing) {
+            showPlayState(playing);
+        }
+
+        @Override
+        public void onError(String message) {
+            Toast.makeText(SongDetailActivity.this, message, Toast.LENGTH_SHORT).show();
+        }
+    };
+
+    // Bài đang hiển thị, hoặc null nếu hàng đợi trống
+    private Song getCurrentSong() {
+        if (songList == null || currentPosition < 0 || currentPosition >= songList.size()) {
+            return null;
+        }
+        return songList.get(currentPosition);
+    }
+
+    // Lấy hàng đợi và trạng thái hiện tại từ service (mở lại màn hình, xoay màn hình, từ notification)
+    private void syncFromService() {
+        songList = new ArrayList<>(playbackService.getQueue());
+        currentPosition = playbackService.getCurrentPosition();
+        Song song = playbackService.getCurrentSong();
+        if (song == null) {
+            // Opened from a stale notification after the service lost its queue
+            Log.w(TAG, "syncFromService: Nothing to play, closing");
+            Toast.makeText(this, "Không có bài hát nào đang phát", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        bindSongData(song);
+        checkFavoriteStatus(song);
+
+        isRepeat = playbackService.isRepeat();
+        isShuffle = playbackService.isShuffle();
+        btnRepeat.setImageResource(isRepeat ? R.drawable.ic_repeat_one : R.drawable.ic_repeat);
+        btnShuffle.setImageResource(isShuffle ? R.drawable.ic_shuffle_on: R.drawable.ic_shuffle);
+
+        if (playbackService.isPrepared()) {
+            int duration = playbackService.getDuration();
+            int pos = playbackService.getPlaybackPosition();
+            seekBar.setMax(duration);
+            seekBar.setProgress(pos);
+            tvTotalTime.setText(formatDuration(duration / 1000));
+            tvCurrentTime.setText(formatDuration(pos / 1000));
+            btnPlayPause.setEnabled(true);
+        }
+        showPlayState(playbackService.isPlaying());
     }
 
     // === UI Padding for System Bars ===
@@ -94,8 +236,17 @@ public class SongDetailActivity extends AppCompatActivity {
     // === Get Data from Intent ===
     private void getIntentData() {
         Intent intent = getIntent();
-        songList = (ArrayList<Song>) intent.getSerializableExtra("song_list");
+        // Danh sách nằm trong PlaylistStore, Intent chỉ mang id
+        List<Song> stored = PlaylistStore.getInstance().get(intent.getStringExtra(PlaylistStore.EXTRA_PLAYLIST_ID));
         currentPosition = intent.getIntExtra("current_position", 0);
+        if (stored != null) {
+            songList = new ArrayList<>(stored);
+        } else if (intent.hasExtra("preview_url")) {
+            // Process bị khởi động lại nên store trống: chỉ phát bài được chọn
+            songList = new ArrayList<>();
+            songList.add(songFromExtras(intent));
+            currentPosition = 0;
+        }
         
         // Kiểm tra thông tin nhận được từ intent
         Log.d(TAG, "Received intent data");
@@ -131,6 +282,29 @@ public class SongDetailActivity extends AppCompatActivity {
         }
     }
 
+    private Song songFromExtras(Intent intent) {
+        Song song = new Song();
+        song.setSongId(intent.getStringExtra("song_id"));
+        song.setTitle(intent.getStringExtra("title"));
+        song.setArtist(intent.getStringExtra("artist"));
+        song.setDuration(intent.getIntExtra("duration", 0));
+        song.setThumbnailUrl(intent.getStringExtra("thumbnail_url"));
+        song.setFilePath(intent.getStringExtra("preview_url"));
+        song.setGenre(intent.getStringExtra("genre"));
+        return song;
+    }
+
+    // Thời gian từ lúc bấm bài hát đến khi màn hình vẽ xong khung hình đầu tiên
+    private void logStartupTime(Bundle savedInstanceState) {
+        long launchTime = getIntent().getLongExtra(PlaylistStore.EXTRA_LAUNCH_TIME, -1);
+        if (launchTime < 0 || savedInstanceState != null) {
+            return;
+        }
+        getWindow().getDecorView().post(() -> Log.d(TAG, "Startup: "
+                + (SystemClock.elapsedRealtime() - launchTime) + "ms, " + (songList != null ? songList.size() : 0)
+                + " songs via PlaylistStore"));
+    }
+
     // === Bind UI Views ===
     private void bindViews() {
         tvSongTitle = findViewById(R.id.tvSongTitle);
@@ -184,16 +358,21 @@ public class SongDetailActivity extends AppCompatActivity {
         btnRepeat.setOnClickListener(v -> {
             isRepeat = !isRepeat;
             btnRepeat.setImageResource(isRepeat ? R.drawable.ic_repeat_one : R.drawable.ic_repeat);
+            if (serviceBound) playbackService.setRepeat(isRepeat);
         });
 
         btnShuffle.setOnClickListener(v -> {
             isShuffle = !isShuffle;
             btnShuffle.setImageResource(isShuffle ? R.drawable.ic_shuffle_on: R.drawable.ic_shuffle);
+            if (serviceBound) playbackService.setShuffle(isShuffle);
         });
 
         // Favorite button click
         btnFavourite.setOnClickListener(v -> {
-            Song currentSong = songList.get(currentPosition);
+            Song currentSong = getCurrentSong();
+            if (currentSong == null) {
+                return;
+            }
             favoriteRepository.toggleFavorite(currentSong, new FavoriteRepository.FavoriteCallback() {
                 @Override
                 public void onSuccess(boolean favorite) {
@@ -216,7 +395,10 @@ public class SongDetailActivity extends AppCompatActivity {
 
         // Comment button click
         btnComment.setOnClickListener(v -> {
-            Song currentSong = songList.get(currentPosition);
+            Song currentSong = getCurrentSong();
+            if (currentSong == null) {
+                return;
+            }
             Intent intent = new Intent(this, com.example.beomusic.views.ShowComment.class);
             intent.putExtra("songId", currentSong.getId());
             intent.putExtra("songTitle", currentSong.getTitle());
@@ -248,8 +430,8 @@ public class SongDetailActivity extends AppCompatActivity {
 
         seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override public void onProgressChanged(SeekBar sb, int progress, boolean fromUser) {
-                if (fromUser && mediaPlayer != null) {
-                    mediaPlayer.seekTo(progress);
+                if (fromUser && serviceBound && playbackService.isPrepared()) {
+                    playbackService.seekTo(progress);
                     tvCurrentTime.setText(formatDuration(progress / 1000));
                 }
             }
@@ -257,7 +439,7 @@ public class SongDetailActivity extends AppCompatActivity {
                 handler.removeCallbacks(updateSeekBar);
             }
             @Override public void onStopTrackingTouch(SeekBar sb) {
-                if (mediaPlayer != null && mediaPlayer.isPlaying()) {
+                if (serviceBound && playbackService.isPlaying()) {
                     handler.postDelayed(updateSeekBar, 1000);
                 }
             }
@@ -276,31 +458,20 @@ public class SongDetailActivity extends AppCompatActivity {
     }
 
     // === Load Song Data and Start Player ===
+    // Service báo lại qua onTrackChanged/onTrackStarted để cập nhật UI
     private void loadSongFromList(int position) {
-        if (mediaPlayer != null) {
-            handler.removeCallbacks(updateSeekBar);
-            mediaPlayer.release();
-        }
-
-        Song song = songList.get(position);
-        bindSongData(song);
-        
-        // Debug logs
-        Log.d(TAG, "Loading song: " + song.getTitle());
-        Log.d(TAG, "Song ID: " + song.getSongId());
-        Log.d(TAG, "File path: " + song.getFilePath());
-        
-        if (song.getFilePath() == null || song.getFilePath().isEmpty()) {
-            Toast.makeText(this, "Không thể phát bài hát này - không có đường dẫn file", Toast.LENGTH_SHORT).show();
-            return;
+        if (serviceBound) {
+            playbackService.playAt(position);
         }
-        
-        initializeMediaPlayer(song.getFilePath());
-        
-        // Check if song is in favorites
-        checkFavoriteStatus(song);
     }
     
+    // Danh sách yêu thích thay đổi (thiết bị khác, màn hình khác): cập nhật lại icon
+    private final FavoriteIdsCache.Listener favoritesListener = () -> {
+        if (songList != null && currentPosition >= 0 && currentPosition < songList.size()) {
+            checkFavoriteStatus(songList.get(currentPosition));
+        }
+    };
+
     // Check if the current song is in favorites
     private void checkFavoriteStatus(Song song) {
         favoriteRepository.isFavorite(song, new FavoriteRepository.FavoriteCallback() {
@@ -335,57 +506,10 @@ public class SongDetailActivity extends AppCompatActivity {
         }
     }
 
-    private void initializeMediaPlayer(String url) {
-        if (url == null || url.isEmpty()) {
-            Log.e(TAG, "MediaPlayer initialization error: Empty URL");
-            Toast.makeText(this, "Không thể phát - URL không hợp lệ", Toast.LENGTH_SHORT).show();
-            return;
-        }
-        
-        Log.d(TAG, "Initializing MediaPlayer with URL: " + url);
-        mediaPlayer = new MediaPlayer();
-
-        mediaPlayer.setAudioAttributes(new AudioAttributes.Builder()
-                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                .setUsage(AudioAttributes.USAGE_MEDIA)
-                .build());
-
-        try {
-            mediaPlayer.setDataSource(url);
-            mediaPlayer.prepareAsync();
-
-            mediaPlayer.setOnPreparedListener(mp -> {
-                Log.d(TAG, "MediaPlayer prepared successfully");
-                seekBar.setMax(mp.getDuration());
-                tvTotalTime.setText(formatDuration(mp.getDuration() / 1000));
-                btnPlayPause.setEnabled(true);
-
-                startPlayback();
-            });
-
-            mediaPlayer.setOnCompletionListener(mp -> handleSongCompletion());
-
-            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                Log.e(TAG, "Playback Error: what=" + what + ", extra=" + extra);
-                Toast.makeText(this, "Lỗi phát nhạc: " + what, Toast.LENGTH_SHORT).show();
-                return true;
-            });
-
-            initSeekBarUpdater();
-
-        } catch (IOException e) {
-            Log.e(TAG, "DataSource Error: " + e.getMessage());
-            Toast.makeText(this, "Không thể phát nhạc: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            Log.e(TAG, "Unknown Error: " + e.getMessage());
-            Toast.makeText(this, "Lỗi không xác định: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
-    }
-
     private void initSeekBarUpdater() {
         updateSeekBar = () -> {
-            if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                int pos = mediaPlayer.getCurrentPosition();
+            if (serviceBound && playbackService.isPlaying()) {
+                int pos = playbackService.getPlaybackPosition();
                 seekBar.setProgress(pos);
                 tvCurrentTime.setText(formatDuration(pos / 1000));
                 handler.postDelayed(updateSeekBar, 1000);
@@ -393,34 +517,25 @@ public class SongDetailActivity extends AppCompatActivity {
         };
     }
 
-    private void handleSongCompletion() {
-        if (isRepeat) {
-            loadSongFromList(currentPosition);
-        } else if (isShuffle) {
-            currentPosition = new Random().nextInt(songList.size());
-            loadSongFromList(currentPosition);
-        } else {
-            currentPosition = (currentPosition + 1) % songList.size();
-            loadSongFromList(currentPosition);
-        }
-    }
-
     // === Playback ===
     private void startPlayback() {
-        if (mediaPlayer != null) {
-            mediaPlayer.start();
-            isPlaying = true;
-            btnPlayPause.setImageResource(R.drawable.ic_pause);
-            handler.postDelayed(updateSeekBar, 1000);
+        if (serviceBound && playbackService.isPrepared()) {
+            playbackService.resume();
         }
     }
 
     private void pausePlayback() {
-        if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-            mediaPlayer.pause();
-            isPlaying = false;
-            btnPlayPause.setImageResource(R.drawable.ic_play);
-            handler.removeCallbacks(updateSeekBar);
+        if (serviceBound && playbackService.isPlaying()) {
+            playbackService.pause();
+        }
+    }
+
+    private void showPlayState(boolean playing) {
+        isPlaying = playing;
+        btnPlayPause.setImageResource(playing ? R.drawable.ic_pause : R.drawable.ic_play);
+        handler.removeCallbacks(updateSeekBar);
+        if (playing) {
+            handler.postDelayed(updateSeekBar, 1000);
         }
     }
 
@@ -430,19 +545,19 @@ public class SongDetailActivity extends AppCompatActivity {
                 TimeUnit.SECONDS.toMinutes(seconds), seconds % 60);
     }
 
-    @Override
-    protected void onPause() {
-        super.onPause();
-        pausePlayback();
-    }
-
+    // Nhạc tiếp tục phát trong service khi rời màn hình; chỉ ngắt kết nối UI
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (mediaPlayer != null) {
-            handler.removeCallbacks(updateSeekBar);
-            mediaPlayer.release();
-            mediaPlayer = null;
+        handler.removeCallbacks(updateSeekBar);
+        favoriteRepository.getFavoriteIds().removeListener(favoritesListener);
+        if (serviceBound) {
+            playbackService.removeListener(playbackListener);
+            serviceBound = false;
+        }
+        if (bindRequested) {
+            unbindService(serviceConnection);
+            bindRequested = false;
         }
     }
 }
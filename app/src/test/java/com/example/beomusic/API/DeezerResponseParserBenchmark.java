@@ -0,0 +1,181 @@
+package com.example.beomusic.API;
+
+import com.example.beomusic.models.Song;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares time and allocation of the streaming parser against the previous
+ * buffer-to-String + org.json tree parser on a large search page.
+ *
+ * Not part of the unit test run (see testOptions in app/build.gradle); it prints numbers
+ * to compare by hand. Run it with:
+ * ./gradlew testDebugUnitTest -Pbenchmarks --tests '*DeezerResponseParserBenchmark'
+ */
+public class DeezerResponseParserBenchmark {
+
+    private static final int TRACKS_PER_PAGE = 500;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    @Test
+    public void streamingParser_vsTreeParser() throws Exception {
+        byte[] page = buildPage(TRACKS_PER_PAGE);
+
+        // Both parsers must agree before comparing them
+        List<Song> expected = parseWithTree(new ByteArrayInputStream(page));
+        List<Song> actual = parseStreaming(new ByteArrayInputStream(page));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getSongId(), actual.get(i).getSongId());
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getArtist(), actual.get(i).getArtist());
+            assertEquals(expected.get(i).getThumbnailUrl(), actual.get(i).getThumbnailUrl());
+            assertEquals(expected.get(i).getFilePath(), actual.get(i).getFilePath());
+        }
+
+        Result tree = measure("tree", () -> parseWithTree(new ByteArrayInputStream(page)));
+        Result streaming = measure("streaming", () -> parseStreaming(new ByteArrayInputStream(page)));
+
+        System.out.println(String.format(Locale.US, "Deezer page: %d tracks, %d KB", TRACKS_PER_PAGE, page.length / 1024));
+        System.out.println(tree);
+        System.out.println(streaming);
+    }
+
+    private interface ParseRun {
+        List<Song> run() throws Exception;
+    }
+
+    private static class Result {
+        final String name;
+        final double millisPerPage;
+        final long bytesPerPage;
+
+        Result(String name, double millisPerPage, long bytesPerPage) {
+            this.name = name;
+            this.millisPerPage = millisPerPage;
+            this.bytesPerPage = bytesPerPage;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-10s %8.3f ms/page %10s",
+                    name, millisPerPage, bytesPerPage < 0 ? "n/a" : (bytesPerPage / 1024) + " KB/page");
+        }
+    }
+
+    private Result measure(String name, ParseRun run) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run.run();
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            run.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+
+        long bytesPerPage = allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / MEASURED_ROUNDS;
+        return new Result(name, elapsed / 1_000_000.0 / MEASURED_ROUNDS, bytesPerPage);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static List<Song> parseStreaming(InputStream in) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        new DeezerResponseParser().parse(in, songs::add);
+        return songs;
+    }
+
+    // The parser DeezerApiService used before the streaming one
+    private static List<Song> parseWithTree(InputStream in) throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        StringBuilder response = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            response.append(line);
+        }
+        reader.close();
+
+        List<Song> songs = new ArrayList<>();
+        JSONArray dataArray = new JSONObject(response.toString()).getJSONArray("data");
+        for (int i = 0; i < dataArray.length(); i++) {
+            JSONObject trackJson = dataArray.getJSONObject(i);
+
+            // Android's org.json coerces numbers in getString(), the JVM artifact does not
+            Song song = new Song();
+            song.setSongId(String.valueOf(trackJson.get("id")));
+            song.setTitle(trackJson.getString("title"));
+            song.setArtist(trackJson.getJSONObject("artist").getString("name"));
+            song.setDuration(trackJson.getInt("duration"));
+            song.setSourceType("Deezer");
+            song.setFilePath(trackJson.getString("preview"));
+            song.setThumbnailUrl(trackJson.getJSONObject("album").getString("cover_medium"));
+            song.setGenre(trackJson.has("genre_id") ? String.valueOf(trackJson.get("genre_id")) : "Unknown");
+            song.setAddedDate(new Date());
+            song.setPlayCount(0);
+            songs.add(song);
+        }
+        return songs;
+    }
+
+    private static byte[] buildPage(int tracks) {
+        StringBuilder json = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < tracks; i++) {
+            if (i > 0) json.append(',');
+            String md5 = String.format(Locale.US, "%032x", i * 7919L);
+            json.append("{\"id\":").append(1_000_000 + i)
+                    .append(",\"readable\":true,\"title\":\"Track ").append(i)
+                    .append("\",\"title_short\":\"Track ").append(i)
+                    .append("\",\"title_version\":\"\",\"link\":\"https://www.deezer.com/track/").append(1_000_000 + i)
+                    .append("\",\"duration\":").append(120 + i % 180)
+                    .append(",\"rank\":").append(900_000 - i)
+                    .append(",\"explicit_lyrics\":false,\"explicit_content_lyrics\":0,\"explicit_content_cover\":0")
+                    .append(",\"preview\":\"https://cdns-preview-d.dzcdn.net/stream/c-").append(md5).append("-8.mp3\"")
+                    .append(",\"md5_image\":\"").append(md5).append('"')
+                    .append(",\"artist\":{\"id\":").append(4_999_707 + i % 13)
+                    .append(",\"name\":\"Artist ").append(i % 13)
+                    .append("\",\"link\":\"https://www.deezer.com/artist/").append(4_999_707 + i % 13)
+                    .append("\",\"picture\":\"https://api.deezer.com/artist/").append(4_999_707 + i % 13)
+                    .append("/image\",\"tracklist\":\"https://api.deezer.com/artist/").append(4_999_707 + i % 13)
+                    .append("/top?limit=50\",\"type\":\"artist\"}")
+                    .append(",\"album\":{\"id\":").append(300_000 + i)
+                    .append(",\"title\":\"Album ").append(i)
+                    .append("\",\"cover\":\"https://api.deezer.com/album/").append(300_000 + i)
+                    .append("/image\",\"cover_small\":\"https://e-cdns-images.dzcdn.net/images/cover/").append(md5)
+                    .append("/56x56-000000-80-0-0.jpg\",\"cover_medium\":\"https://e-cdns-images.dzcdn.net/images/cover/").append(md5)
+                    .append("/250x250-000000-80-0-0.jpg\",\"cover_big\":\"https://e-cdns-images.dzcdn.net/images/cover/").append(md5)
+                    .append("/500x500-000000-80-0-0.jpg\",\"md5_image\":\"").append(md5)
+                    .append("\",\"tracklist\":\"https://api.deezer.com/album/").append(300_000 + i)
+                    .append("/tracks\",\"type\":\"album\"},\"type\":\"track\"}");
+        }
+        json.append("],\"total\":").append(tracks).append('}');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
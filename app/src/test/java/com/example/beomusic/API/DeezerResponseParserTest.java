@@ -0,0 +1,99 @@
+package com.example.beomusic.API;
+
+import com.example.beomusic.models.Song;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parses a recorded Deezer search response with the streaming parser.
+ */
+public class DeezerResponseParserTest {
+
+    private final DeezerResponseParser parser = new DeezerResponseParser();
+
+    @Test
+    public void parse_recordedFixture_emitsSongsInOrder() throws IOException {
+        List<Song> songs = new ArrayList<>();
+        int total;
+        try (InputStream in = fixture()) {
+            total = parser.parse(in, songs::add);
+        }
+
+        assertEquals(300, total);
+        assertEquals(3, songs.size());
+
+        Song faded = songs.get(0);
+        assertEquals("3135556", faded.getSongId());
+        assertEquals("Faded", faded.getTitle());
+        assertEquals("Alan Walker", faded.getArtist());
+        assertEquals(212, faded.getDuration());
+        assertEquals("Deezer", faded.getSourceType());
+        assertEquals("https://cdns-preview-d.dzcdn.net/stream/c-deda7fa9316d9e9e880d2c6207e92260-8.mp3", faded.getFilePath());
+        assertEquals("https://e-cdns-images.dzcdn.net/images/cover/2e018122cb56986277102d2041a592c8/250x250-000000-80-0-0.jpg",
+                faded.getThumbnailUrl());
+        assertEquals("Unknown", faded.getGenre());
+        assertNotNull(faded.getAddedDate());
+        assertEquals(0, faded.getPlayCount());
+
+        assertEquals("Alone", songs.get(1).getTitle());
+    }
+
+    @Test
+    public void parse_fieldsInAnyOrder_andGenreWhenPresent() throws IOException {
+        List<Song> songs = new ArrayList<>();
+        try (InputStream in = fixture()) {
+            parser.parse(in, songs::add);
+        }
+
+        Song darkside = songs.get(2);
+        assertEquals("548372652", darkside.getSongId());
+        assertEquals("Darkside (feat. Au/Ra & Tomine Harket)", darkside.getTitle());
+        assertEquals("Alan Walker", darkside.getArtist());
+        assertEquals("113", darkside.getGenre());
+        assertNotNull(darkside.getThumbnailUrl());
+    }
+
+    @Test
+    public void parse_emptyData_returnsNoSongs() throws IOException {
+        List<Song> songs = new ArrayList<>();
+        int total = parser.parse(json("{\"data\":[],\"total\":0}"), songs::add);
+
+        assertEquals(0, total);
+        assertTrue(songs.isEmpty());
+    }
+
+    @Test
+    public void parse_nullFields_areSkipped() throws IOException {
+        List<Song> songs = new ArrayList<>();
+        parser.parse(json("{\"data\":[{\"id\":1,\"title\":null,\"preview\":\"p\",\"album\":null}]}"), songs::add);
+
+        assertEquals(1, songs.size());
+        assertEquals("1", songs.get(0).getSongId());
+        assertNull(songs.get(0).getTitle());
+        assertNull(songs.get(0).getThumbnailUrl());
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_errorResponse_throws() throws IOException {
+        parser.parse(json("{\"error\":{\"type\":\"Exception\",\"message\":\"Quota limit exceeded\",\"code\":4}}"), song -> { });
+    }
+
+    private InputStream fixture() {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("deezer_search_alan_walker.json");
+        assertNotNull("missing fixture", in);
+        return in;
+    }
+
+    private static InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
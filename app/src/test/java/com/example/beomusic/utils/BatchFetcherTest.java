@@ -0,0 +1,216 @@
+package com.example.beomusic.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link BatchFetcher} against an in-memory stand-in for a Firestore whereIn query,
+ * completing batches by hand so out-of-order arrival, retries and failures can be staged.
+ */
+public class BatchFetcherTest {
+
+    /** Fake "songs" collection: documents keyed by id, queries completed by the test. */
+    private static class FakeStore implements BatchFetcher.Source<String, String> {
+        final Map<String, String> documents = new HashMap<>();
+        final List<List<String>> pendingKeys = new ArrayList<>();
+        final List<BatchFetcher.BatchCallback<String>> pendingCallbacks = new ArrayList<>();
+        final Map<String, Integer> failuresLeft = new HashMap<>();
+        final List<List<String>> queried = new ArrayList<>();
+        int queries = 0;
+        int inFlight = 0;
+        int maxInFlight = 0;
+
+        FakeStore(String... ids) {
+            for (String id : ids) {
+                documents.put(id, id);
+            }
+        }
+
+        // Make every query whose batch starts with this id fail the given number of times
+        void failBatchStartingWith(String id, int times) {
+            failuresLeft.put(id, times);
+        }
+
+        @Override
+        public void fetch(List<String> keys, BatchFetcher.BatchCallback<String> callback) {
+            queries++;
+            inFlight++;
+            maxInFlight = Math.max(maxInFlight, inFlight);
+            pendingKeys.add(new ArrayList<>(keys));
+            queried.add(new ArrayList<>(keys));
+            pendingCallbacks.add(callback);
+        }
+
+        // Complete the i-th still pending query
+        void complete(int i) {
+            List<String> keys = pendingKeys.remove(i);
+            BatchFetcher.BatchCallback<String> callback = pendingCallbacks.remove(i);
+            inFlight--;
+            Integer failures = failuresLeft.get(keys.get(0));
+            if (failures != null && failures > 0) {
+                failuresLeft.put(keys.get(0), failures - 1);
+                callback.onError(new Exception("unavailable"));
+                return;
+            }
+            List<String> found = new ArrayList<>();
+            // Firestore returns whereIn matches in document order, not request order
+            for (int k = keys.size() - 1; k >= 0; k--) {
+                if (documents.containsKey(keys.get(k))) {
+                    found.add(documents.get(keys.get(k)));
+                }
+            }
+            callback.onSuccess(found);
+        }
+
+        void completeAll() {
+            while (!pendingCallbacks.isEmpty()) {
+                complete(0);
+            }
+        }
+    }
+
+    private static class Recorder implements BatchFetcher.Listener<String, String> {
+        final List<List<String>> progress = new ArrayList<>();
+        BatchFetcher.Result<String, String> result;
+        int completions = 0;
+
+        @Override
+        public void onProgress(List<String> loaded, int totalCount) {
+            progress.add(loaded);
+        }
+
+        @Override
+        public void onComplete(BatchFetcher.Result<String, String> result) {
+            this.result = result;
+            completions++;
+        }
+    }
+
+    private static BatchFetcher<String, String> fetcher(FakeStore store, int batchSize, int maxConcurrent, int maxAttempts) {
+        return new BatchFetcher<>(store, value -> value, batchSize, maxConcurrent, maxAttempts);
+    }
+
+    @Test
+    public void fetch_batchesArriveOutOfOrder_resultKeepsRequestedOrder() {
+        FakeStore store = new FakeStore("a", "b", "c", "d", "e");
+        Recorder recorder = new Recorder();
+
+        fetcher(store, 2, 3, 1).fetch(Arrays.asList("e", "a", "d", "b", "c"), recorder);
+        assertEquals(3, store.pendingCallbacks.size());
+        store.complete(2);
+        store.complete(1);
+        store.complete(0);
+
+        assertEquals(1, recorder.completions);
+        assertTrue(recorder.result.isComplete());
+        assertEquals(Arrays.asList("e", "a", "d", "b", "c"), recorder.result.getValues());
+    }
+
+    @Test
+    public void fetch_neverExceedsMaxConcurrentQueries() {
+        String[] ids = new String[25];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "s" + i;
+        }
+        FakeStore store = new FakeStore(ids);
+        Recorder recorder = new Recorder();
+
+        fetcher(store, 3, 2, 1).fetch(Arrays.asList(ids), recorder);
+        store.completeAll();
+
+        assertEquals(9, store.queries);
+        assertEquals(2, store.maxInFlight);
+        assertEquals(Arrays.asList(ids), recorder.result.getValues());
+    }
+
+    @Test
+    public void fetch_progressOnlyReportsLeadingBatches() {
+        FakeStore store = new FakeStore("a", "b", "c", "d", "e", "f");
+        Recorder recorder = new Recorder();
+
+        fetcher(store, 2, 3, 1).fetch(Arrays.asList("a", "b", "c", "d", "e", "f"), recorder);
+        store.complete(1); // c, d: not reported until a, b are in
+        assertTrue(recorder.progress.isEmpty());
+        store.complete(0); // a, b
+        assertEquals(Arrays.asList("a", "b", "c", "d"), recorder.progress.get(0));
+        store.complete(0); // e, f
+        assertEquals(1, recorder.progress.size());
+        assertEquals(6, recorder.result.getValues().size());
+    }
+
+    @Test
+    public void fetch_failedBatchIsRetried() {
+        FakeStore store = new FakeStore("a", "b", "c", "d");
+        store.failBatchStartingWith("c", 2);
+        Recorder recorder = new Recorder();
+
+        fetcher(store, 2, 2, 3).fetch(Arrays.asList("a", "b", "c", "d"), recorder);
+        store.completeAll();
+
+        assertEquals(4, store.queries);
+        assertTrue(recorder.result.isComplete());
+        assertNull(recorder.result.getLastError());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), recorder.result.getValues());
+    }
+
+    @Test
+    public void fetch_batchFailsEveryAttempt_deliversPartialResult() {
+        FakeStore store = new FakeStore("a", "b", "c", "d", "e");
+        store.failBatchStartingWith("c", 5);
+        Recorder recorder = new Recorder();
+
+        fetcher(store, 2, 1, 2).fetch(Arrays.asList("a", "b", "c", "d", "e"), recorder);
+        store.completeAll();
+
+        assertEquals(1, recorder.completions);
+        assertFalse(recorder.result.isComplete());
+        assertEquals(Arrays.asList("c", "d"), recorder.result.getFailedKeys());
+        assertEquals(Arrays.asList("a", "b", "e"), recorder.result.getValues());
+        assertEquals("unavailable", recorder.result.getLastError().getMessage());
+    }
+
+    @Test
+    public void fetch_missingDocumentsAndDuplicates_areSkipped() {
+        FakeStore store = new FakeStore("a", "c");
+        Recorder recorder = new Recorder();
+
+        fetcher(store, 10, 1, 1).fetch(Arrays.asList("c", "b", "a", "c"), recorder);
+        store.completeAll();
+
+        assertEquals(1, store.queries);
+        assertEquals(Arrays.asList("c", "b", "a"), store.queried.get(0));
+        assertTrue(recorder.result.isComplete());
+        assertEquals(Arrays.asList("c", "a"), recorder.result.getValues());
+    }
+
+    @Test
+    public void fetch_noKeys_completesWithoutQuerying() {
+        FakeStore store = new FakeStore();
+        Recorder recorder = new Recorder();
+
+        fetcher(store, 10, 4, 3).fetch(new ArrayList<>(), recorder);
+
+        assertEquals(0, store.queries);
+        assertEquals(1, recorder.completions);
+        assertTrue(recorder.result.getValues().isEmpty());
+    }
+
+    @Test
+    public void fetch_synchronousSource_completesOnce() {
+        BatchFetcher.Source<String, String> source = (keys, callback) -> callback.onSuccess(new ArrayList<>(keys));
+        Recorder recorder = new Recorder();
+
+        new BatchFetcher<>(source, (String value) -> value, 1, 3, 1)
+                .fetch(Arrays.asList("x", "y", "z"), recorder);
+
+        assertEquals(1, recorder.completions);
+        assertEquals(Arrays.asList("x", "y", "z"), recorder.result.getValues());
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.beomusic.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pages through a fake comment thread the way ShowComment does and counts document
+ * reads, billed like Firestore: one per returned document, one for an empty result.
+ */
+public class CursorPagerTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    /** Comments of one song, already in index order (newest first); the cursor is the list index. */
+    private static class FakeCommentIndex implements CursorPager.PageSource<String, Integer> {
+        final List<String> comments = new ArrayList<>();
+        final List<Integer> readsPerQuery = new ArrayList<>();
+        boolean fail = false;
+
+        FakeCommentIndex(int count) {
+            for (int i = 0; i < count; i++) {
+                comments.add("comment-" + i);
+            }
+        }
+
+        @Override
+        public void load(Integer after, int limit, CursorPager.PageCallback<String, Integer> callback) {
+            if (fail) {
+                callback.onError(new Exception("offline"));
+                return;
+            }
+            // startAfter(cursor).limit(limit): the index seeks to the cursor, nothing before it is read
+            int from = after == null ? 0 : after + 1;
+            int to = Math.min(from + limit, comments.size());
+            List<String> page = new ArrayList<>(comments.subList(Math.min(from, to), to));
+            readsPerQuery.add(Math.max(1, page.size()));
+            callback.onSuccess(page, page.isEmpty() ? after : to - 1);
+        }
+
+        int totalReads() {
+            int total = 0;
+            for (int reads : readsPerQuery) {
+                total += reads;
+            }
+            return total;
+        }
+    }
+
+    private final List<String> shown = new ArrayList<>();
+    private final List<Boolean> firstPageFlags = new ArrayList<>();
+    private int errors = 0;
+
+    private final CursorPager.Listener<String> listener = new CursorPager.Listener<String>() {
+        @Override
+        public void onPageLoaded(List<String> items, boolean firstPage) {
+            if (firstPage) {
+                shown.clear();
+            }
+            shown.addAll(items);
+            firstPageFlags.add(firstPage);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            errors++;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        shown.clear();
+        firstPageFlags.clear();
+        errors = 0;
+    }
+
+    @Test
+    public void eachPage_costsAtMostPageSizeReads() {
+        FakeCommentIndex index = new FakeCommentIndex(1000);
+        CursorPager<String, Integer> pager = new CursorPager<>(index, PAGE_SIZE, listener);
+
+        pager.refresh();
+        for (int page = 1; page < 10; page++) {
+            pager.loadNext();
+        }
+
+        assertEquals(10, index.readsPerQuery.size());
+        for (int reads : index.readsPerQuery) {
+            assertEquals(PAGE_SIZE, reads);
+        }
+        // Page 10 of a 1000-comment thread: 200 reads in total, not 10 x 1000
+        assertEquals(10 * PAGE_SIZE, index.totalReads());
+        assertEquals(200, shown.size());
+        assertEquals("comment-199", shown.get(199));
+    }
+
+    @Test
+    public void pagesFollowEachOther_withoutGapsOrRepeats() {
+        FakeCommentIndex index = new FakeCommentIndex(45);
+        CursorPager<String, Integer> pager = new CursorPager<>(index, PAGE_SIZE, listener);
+
+        pager.refresh();
+        while (pager.hasMore()) {
+            pager.loadNext();
+        }
+
+        assertEquals(index.comments, shown);
+        assertEquals(3, index.readsPerQuery.size());
+        assertEquals(5, (int) index.readsPerQuery.get(2));
+    }
+
+    @Test
+    public void exactMultipleOfPageSize_endsWithOneEmptyQuery() {
+        FakeCommentIndex index = new FakeCommentIndex(40);
+        CursorPager<String, Integer> pager = new CursorPager<>(index, PAGE_SIZE, listener);
+
+        pager.refresh();
+        pager.loadNext();
+        assertTrue(pager.hasMore());
+        pager.loadNext();
+        assertFalse(pager.hasMore());
+        pager.loadNext();
+
+        assertEquals(3, index.readsPerQuery.size());
+        assertEquals(41, index.totalReads());
+        assertEquals(40, shown.size());
+    }
+
+    @Test
+    public void refresh_startsFromTheFirstPageAgain() {
+        FakeCommentIndex index = new FakeCommentIndex(60);
+        CursorPager<String, Integer> pager = new CursorPager<>(index, PAGE_SIZE, listener);
+
+        pager.refresh();
+        pager.loadNext();
+        pager.refresh();
+
+        assertEquals(PAGE_SIZE, shown.size());
+        assertEquals("comment-0", shown.get(0));
+        assertEquals(Boolean.TRUE, firstPageFlags.get(2));
+    }
+
+    @Test
+    public void failedPage_canBeRetriedFromTheSameCursor() {
+        FakeCommentIndex index = new FakeCommentIndex(50);
+        CursorPager<String, Integer> pager = new CursorPager<>(index, PAGE_SIZE, listener);
+
+        pager.refresh();
+        index.fail = true;
+        pager.loadNext();
+        assertEquals(1, errors);
+        assertFalse(pager.isLoading());
+
+        index.fail = false;
+        pager.loadNext();
+        assertEquals(40, shown.size());
+        assertEquals("comment-20", shown.get(20));
+    }
+}
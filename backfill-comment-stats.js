@@ -0,0 +1,119 @@
+/**
+ * One-off backfill of song_comment_stats for songs whose comments predate it.
+ *
+ * The app keeps song_comment_stats in step with every comment it adds or deletes, and
+ * starts the doc with a song's first comment. A song that already had comments gets no
+ * doc from the app (CommentOutbox won't guess its count), so its row shows no count
+ * until this script has built the doc: a count() aggregate plus the newest
+ * MAX_LATEST comments, read and created in one transaction so a comment posted
+ * meanwhile is either counted here or retried by the transaction.
+ *
+ * Runs with admin credentials, which bypass firestore.rules:
+ *   npm install firebase-admin
+ *   GOOGLE_APPLICATION_CREDENTIALS=service-account.json node backfill-comment-stats.js [--dry-run]
+ *
+ * Songs that already have stats are skipped, so it is safe to run again.
+ */
+const admin = require('firebase-admin');
+
+// Same values as SongCommentStats
+const MAX_LATEST = 3;
+const PREVIEW_LENGTH = 100;
+const PAGE_SIZE = 1000;
+
+admin.initializeApp();
+const db = admin.firestore();
+const dryRun = process.argv.includes('--dry-run');
+
+// Distinct songIds of all comments, reading only that field
+async function songsWithComments() {
+  const songIds = new Set();
+  let last = null;
+  for (;;) {
+    let query = db.collection('comments')
+        .orderBy(admin.firestore.FieldPath.documentId())
+        .select('songId')
+        .limit(PAGE_SIZE);
+    if (last) {
+      query = query.startAfter(last);
+    }
+    const page = await query.get();
+    for (const doc of page.docs) {
+      const songId = doc.get('songId');
+      if (typeof songId === 'string' && songId) {
+        songIds.add(songId);
+      }
+    }
+    if (page.size < PAGE_SIZE) {
+      return songIds;
+    }
+    last = page.docs[page.docs.length - 1];
+  }
+}
+
+function preview(doc) {
+  const content = doc.get('content');
+  return {
+    commentId: doc.id,
+    userId: doc.get('userId') || null,
+    username: doc.get('username') || null,
+    content: typeof content === 'string' && content.length > PREVIEW_LENGTH
+        ? content.substring(0, PREVIEW_LENGTH) : (content || null),
+    timestamp: doc.get('timestamp') || null,
+  };
+}
+
+// @return Comment count stored, or -1 if the song already had stats
+async function backfill(songId) {
+  const statsRef = db.collection('song_comment_stats').doc(songId);
+  const comments = db.collection('comments').where('songId', '==', songId);
+  return db.runTransaction(async (transaction) => {
+    const stats = await transaction.get(statsRef);
+    if (stats.exists) {
+      return -1;
+    }
+    const count = (await transaction.get(comments.count())).data().count;
+    const latest = await transaction.get(comments.orderBy('timestamp', 'desc').limit(MAX_LATEST));
+    const latestComments = {};
+    for (const doc of latest.docs) {
+      latestComments[doc.id] = preview(doc);
+    }
+    if (!dryRun) {
+      transaction.create(statsRef, {
+        commentCount: count,
+        latestComments,
+        lastCommentId: latest.empty ? null : latest.docs[0].id,
+      });
+    }
+    return count;
+  });
+}
+
+async function main() {
+  const songIds = await songsWithComments();
+  console.log(`${songIds.size} songs with comments${dryRun ? ' (dry run)' : ''}`);
+  let created = 0;
+  let skipped = 0;
+  let failed = 0;
+  for (const songId of songIds) {
+    try {
+      const count = await backfill(songId);
+      if (count < 0) {
+        skipped++;
+      } else {
+        created++;
+        console.log(`${songId}: ${count} comments`);
+      }
+    } catch (e) {
+      failed++;
+      console.error(`${songId}: ${e.message}`);
+    }
+  }
+  console.log(`created=${created}, alreadyHadStats=${skipped}, failed=${failed}`);
+  process.exitCode = failed > 0 ? 1 : 0;
+}
+
+main().catch((e) => {
+  console.error(e);
+  process.exitCode = 1;
+});